@@ -0,0 +1,107 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An interpreter that attributes every runtime object it allocates for the
+ * script (environments, bound methods, instances, boxed numbers and strings)
+ * to the Lox line and function that caused it.
+ *
+ * Java allocation profiles only show Environment, HashMap$Node and Double;
+ * this tells which Lox constructs those come from.
+ */
+class AllocationProfiler extends ProfilingInterpreter {
+    private static final int TOP = 20;
+
+    private final Map<Site, long[]> sites = new HashMap<>();
+    private final Map<Allocation, Long> totals = new EnumMap<>(Allocation.class);
+
+    AllocationProfiler(ErrorReporter reporter) {
+        super(reporter);
+        reportsNumbers = true;
+    }
+
+    private static class Site {
+        final int line;
+        final String function;
+        final Allocation kind;
+
+        Site(int line, String function, Allocation kind) {
+            this.line = line;
+            this.function = function;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Site)) return false;
+
+            Site site = (Site)other;
+            return line == site.line && kind == site.kind && function.equals(site.function);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(line, function, kind);
+        }
+    }
+
+    // The environments of blocks and calls are counted rather than reported, to keep budgets cheap
+    @Override
+    void executeBlock(List<Stmt> statements, Environment environment) {
+        allocated(Allocation.ENVIRONMENT);
+        super.executeBlock(statements, environment);
+    }
+
+    @Override
+    void allocated(Allocation kind) {
+        long[] count = sites.computeIfAbsent(new Site(currentLine, currentFunction, kind), s -> new long[1]);
+        count[0]++;
+        totals.merge(kind, 1L, Long::sum);
+    }
+
+    /**
+     * Prints the totals per kind of allocation, followed by the sites that
+     * allocated the most objects.
+     *
+     * @param source The source code that was run.
+     * @param out The stream to print the report to.
+     */
+    void reportAllocations(String source, PrintStream out) {
+        String[] text = source.split("\r?\n", -1);
+
+        out.println();
+        out.println("=== Allocations ===");
+        long total = 0;
+        for (Map.Entry<Allocation, Long> entry : totals.entrySet()) {
+            out.printf("%-14s %12d%n", name(entry.getKey()), entry.getValue());
+            total += entry.getValue();
+        }
+        out.printf("%-14s %12d%n", "total", total);
+
+        List<Map.Entry<Site, long[]>> top = new ArrayList<>(sites.entrySet());
+        top.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        out.println();
+        out.println("=== Top allocation sites ===");
+        out.printf("%12s %7s  %-14s %-20s %s%n", "count", "%", "kind", "function", "line");
+        for (int i = 0; i < top.size() && i < TOP; i++) {
+            Site site = top.get(i).getKey();
+            long count = top.get(i).getValue()[0];
+            String code = site.line >= 1 && site.line <= text.length ? text[site.line - 1].trim() : "";
+
+            out.printf("%12d %6.2f%%  %-14s %-20s %4d: %s%n",
+                count, 100.0 * count / total, name(site.kind), site.function, site.line, code);
+        }
+    }
+
+    private static String name(Allocation kind) {
+        return kind.name().toLowerCase().replace('_', ' ');
+    }
+}
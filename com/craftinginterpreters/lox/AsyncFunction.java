@@ -0,0 +1,22 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A function implemented in Java that starts an asynchronous operation, such
+ * as reading a file, and returns without waiting for it. Scripts get a
+ * promise of its result, settled on their event loop when the operation
+ * completes.
+ */
+@FunctionalInterface
+public interface AsyncFunction {
+    /**
+     * Starts the operation.
+     *
+     * @param arguments The arguments, as Lox values.
+     * @return The operation, which may complete on any thread. Its result is
+     *         converted to a Lox value like the result of a NativeFunction.
+     */
+    CompletionStage<?> call(List<Object> arguments);
+}
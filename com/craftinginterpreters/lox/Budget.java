@@ -0,0 +1,106 @@
+package com.craftinginterpreters.lox;
+
+import java.time.Duration;
+
+/**
+ * Limits on how much work a script may do, for running untrusted code.
+ *
+ * <pre>
+ * Budget budget = Budget.unlimited()
+ *     .withStatements(10_000_000)
+ *     .withTimeout(Duration.ofMillis(500))
+ *     .withCallDepth(200)
+ *     .withAllocatedBytes(64 &lt;&lt; 20);
+ * LoxContext context = engine.newContext(budget);
+ * </pre>
+ *
+ * The budget is spent afresh by every eval() or call made from the host on
+ * a context. A script that exceeds it is stopped with a
+ * BudgetExceededException.
+ *
+ * The limits are checked when a loop goes round and when a function is
+ * called, which are the only ways a script can run for long, so a script may
+ * overshoot the statement limit by the work of one loop iteration. The clock
+ * is only read every thousand statements or so, so a script may overshoot
+ * its time limit by the time those take: usually well under a millisecond,
+ * but more if they call a slow native or host function, which is never
+ * interrupted. The allocation budget is approximate: it adds up an estimate
+ * of the size of every environment, instance, bound method and string the
+ * script creates, whether or not they are still reachable, and only adds up
+ * environments every thousand statements or so.
+ *
+ * A budget is immutable; the with methods return a modified copy.
+ */
+public final class Budget {
+    private static final Budget UNLIMITED =
+        new Budget(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    final long statements;
+    final long timeoutNanos;
+    final int callDepth;
+    final long allocatedBytes;
+
+    private Budget(long statements, long timeoutNanos, int callDepth, long allocatedBytes) {
+        this.statements = statements;
+        this.timeoutNanos = timeoutNanos;
+        this.callDepth = callDepth;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns the budget without any limit, to start from.
+     */
+    public static Budget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Limits the number of statements executed, counting every statement in
+     * every loop iteration and call. The count is approximate: a block counts
+     * all of its statements when it is entered, even if it returns early.
+     */
+    public Budget withStatements(long statements) {
+        return new Budget(positive(statements), timeoutNanos, callDepth, allocatedBytes);
+    }
+
+    /**
+     * Limits the wall-clock time a script may run for.
+     */
+    public Budget withTimeout(Duration timeout) {
+        return new Budget(statements, positive(timeout.toNanos()), callDepth, allocatedBytes);
+    }
+
+    /**
+     * Limits how deeply calls of Lox functions may nest. A call counts once
+     * the function starts running, so f(g()) only reaches a depth of one: g
+     * has returned by then. Native functions don't count.
+     */
+    public Budget withCallDepth(int callDepth) {
+        return new Budget(statements, timeoutNanos, (int)positive(callDepth), allocatedBytes);
+    }
+
+    /**
+     * Limits the approximate number of bytes allocated for environments,
+     * instances, bound methods and strings.
+     */
+    public Budget withAllocatedBytes(long allocatedBytes) {
+        return new Budget(statements, timeoutNanos, callDepth, positive(allocatedBytes));
+    }
+
+    private static long positive(long limit) {
+        if (limit <= 0) throw new IllegalArgumentException("A limit must be positive: " + limit);
+        return limit;
+    }
+
+    boolean hasTimeout() {
+        return timeoutNanos != Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "Budget[statements=" + statements +
+               ", timeout=" + Duration.ofNanos(timeoutNanos) +
+               ", callDepth=" + callDepth +
+               ", allocatedBytes=" + allocatedBytes + "]";
+    }
+}
@@ -0,0 +1,10 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The runtime error that stops a script which has used up its budget.
+ */
+class BudgetExceeded extends RuntimeError {
+    BudgetExceeded(Token token, String message) {
+        super(token, message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Thrown to the host when a script is stopped for exceeding its Budget.
+ */
+public class BudgetExceededException extends LoxException {
+    BudgetExceededException(String message, int line) {
+        super(message, line);
+    }
+}
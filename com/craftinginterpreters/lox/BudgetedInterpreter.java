@@ -0,0 +1,185 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * An interpreter that stops scripts exceeding a Budget.
+ *
+ * It adds no work to the hot paths of the Interpreter: statements, the
+ * environments of blocks and calls, and the depth of calls are counted by
+ * the Interpreter itself, budget or not, and loop back-edges and calls only
+ * compare the counters with a threshold. Once the count of statements
+ * passes it, every STATEMENTS_PER_CHECK statements at most, checkBudget()
+ * compares them with the budget, adds up the bytes allocated and reads the
+ * clock. Other allocations are reported through allocated() as they
+ * happen.
+ *
+ * The workers of an evaluation, running tasks or parallel loops, spend the
+ * same budget: each adds what it has counted since its last check to the
+ * totals they share, and checks those.
+ */
+class BudgetedInterpreter extends Interpreter {
+    // Rough sizes, in bytes, of what each kind of allocation creates
+    private static final long ENVIRONMENT_BYTES = 96;  // Environment and its HashMap
+    private static final long INSTANCE_BYTES = 96;     // LoxInstance and its HashMap
+    private static final long BOUND_METHOD_BYTES = 144; // LoxFunction and an Environment
+    private static final long STRING_BYTES = 40;       // String and its array, without the characters
+
+    private static final long STATEMENTS_PER_CHECK = 1024;
+
+    private final Budget budget;
+
+    private boolean running = false;
+    private long allocatedBytes; // by everything but environments, which are counted
+    private Spent spent; // by this interpreter and its workers, as of their last checks
+    private long spentStatements; // how much of the counters has been added to spent
+    private long spentBytes;
+    private long start;
+    private Token lastChecked; // where the script last was, for errors raised outside of it
+
+    BudgetedInterpreter(ErrorReporter reporter, GlobalEnvironment.Slots slots, Budget budget) {
+        super(reporter, slots);
+        this.budget = budget;
+        this.maxDepth = budget.callDepth;
+    }
+
+    BudgetedInterpreter(Interpreter parent, ErrorReporter reporter, Budget budget) {
+        super(parent, reporter);
+        this.budget = budget;
+        this.maxDepth = budget.callDepth;
+    }
+
+    /**
+     * The statements and bytes spent by an evaluation, across its workers.
+     */
+    private static final class Spent {
+        final AtomicLong statements = new AtomicLong();
+        final AtomicLong allocatedBytes = new AtomicLong();
+    }
+
+    /**
+     * Workers share the statement and allocation budgets and the deadline of
+     * the evaluation that started them, so that spreading the work across
+     * them doesn't multiply the budget. Each counts the depth of its own
+     * calls, from the function it was started with.
+     */
+    @Override
+    Interpreter worker() {
+        BudgetedInterpreter worker = new BudgetedInterpreter(this, new ErrorReporter(), budget);
+        worker.running = true;
+        worker.spent = spent;
+        worker.start = start;
+        worker.nextCheck = worker.checkAfter(spent.statements.get());
+        return worker;
+    }
+
+    @Override
+    Object run(List<Stmt> statements) {
+        return spend(() -> super.run(statements));
+    }
+
+    @Override
+    Object callFromHost(LoxCallable callee, List<Object> arguments) {
+        return spend(() -> super.callFromHost(callee, arguments));
+    }
+
+    /**
+     * Runs something on behalf of the host with a fresh budget. A host
+     * function called back from a script shares the budget of that script.
+     */
+    private Object spend(Supplier<Object> work) {
+        if (running) return work.get();
+
+        running = true;
+        statements = 0;
+        environments = 0;
+        allocatedBytes = 0;
+        depth = 0;
+        spent = new Spent();
+        spentStatements = 0;
+        spentBytes = 0;
+        nextCheck = checkAfter(0);
+        start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    void allocated(Allocation kind) {
+        switch (kind) {
+            case ENVIRONMENT: allocatedBytes += ENVIRONMENT_BYTES; break;
+            case INSTANCE: allocatedBytes += INSTANCE_BYTES; break;
+            case BOUND_METHOD: allocatedBytes += BOUND_METHOD_BYTES; break;
+            case STRING: allocatedBytes += STRING_BYTES; break;
+            default: break; // boxed numbers are too short-lived to count, and aren't reported
+        }
+    }
+
+    // Wherever a string is concatenated, whether by a Binary or a superinstruction
+    @Override
+    void allocated(Allocation kind, int length) {
+        allocated(kind);
+        allocatedBytes += length;
+        // A string doubled in a loop would outgrow the budget long before the next check
+        if (allocatedBytes > budget.allocatedBytes) nextCheck = -1;
+    }
+
+    @Override
+    long timeLeft() {
+        if (!budget.hasTimeout()) return Long.MAX_VALUE;
+        return budget.timeoutNanos - (System.nanoTime() - start);
+    }
+
+    @Override
+    void timeRanOut() {
+        Token where = lastChecked != null ? lastChecked : new Token(TokenType.EOF, "", null, 0);
+        throw new BudgetExceeded(where,
+            "Exceeded the time limit of " + budget.timeoutNanos / 1_000_000 + " ms.");
+    }
+
+    /**
+     * Adds the counters to what the evaluation has spent and checks that
+     * against the budget, once the statements have passed nextCheck or the
+     * calls maxDepth, and sets when to check again.
+     */
+    @Override
+    void checkBudget(Token where) {
+        lastChecked = where;
+        if (depth > budget.callDepth) {
+            throw new BudgetExceeded(where,
+                "Exceeded the limit of " + budget.callDepth + " nested calls.");
+        }
+
+        long totalStatements = spent.statements.addAndGet(statements - spentStatements);
+        spentStatements = statements;
+        if (totalStatements > budget.statements) {
+            throw new BudgetExceeded(where,
+                "Exceeded the limit of " + budget.statements + " statements.");
+        }
+
+        long bytes = allocatedBytes + environments * ENVIRONMENT_BYTES;
+        long totalBytes = spent.allocatedBytes.addAndGet(bytes - spentBytes);
+        spentBytes = bytes;
+        if (totalBytes > budget.allocatedBytes) {
+            throw new BudgetExceeded(where,
+                "Exceeded the limit of " + budget.allocatedBytes + " allocated bytes.");
+        }
+
+        if (budget.hasTimeout() && System.nanoTime() - start > budget.timeoutNanos) {
+            throw new BudgetExceeded(where,
+                "Exceeded the time limit of " + budget.timeoutNanos / 1_000_000 + " ms.");
+        }
+
+        nextCheck = checkAfter(totalStatements);
+    }
+
+    // Never later than the statement that would take the total over the budget
+    private long checkAfter(long totalStatements) {
+        return statements + Math.min(STATEMENTS_PER_CHECK, budget.statements - totalStatements);
+    }
+}
@@ -0,0 +1,149 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue through which tasks hand values to each other, created with
+ * Channel() or BoundedChannel(capacity):
+ *
+ * <pre>
+ * channel.send(value) // waits while a bounded channel is full
+ * channel.receive()   // waits while the channel is empty; nil once closed and drained
+ * channel.close()     // no more sends; receivers get what is left, then nil
+ * </pre>
+ *
+ * Since nil marks the end of a closed channel, it can't be sent. The values
+ * themselves are not copied: an instance sent on a channel is shared by the
+ * sender and the receiver.
+ *
+ * Waiting uses a ReentrantLock rather than a monitor, so that on a JDK with
+ * virtual threads a task blocked on a channel frees its carrier thread. A
+ * script with a time budget stops waiting once its time is up.
+ */
+final class Channel extends NativeObject {
+    private final int capacity;
+    private final ArrayDeque<Object> values = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private boolean closed = false;
+
+    // Given the interpreter, for its time budget
+    private final LoxCallable send = new LoxCallable() {
+        @Override
+        public int arity() { return 1; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            send(interpreter, arguments.get(0));
+            return null;
+        }
+
+        @Override
+        public String toString() { return "<native fn send>"; }
+    };
+
+    private final LoxCallable receive = new LoxCallable() {
+        @Override
+        public int arity() { return 0; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return receive(interpreter);
+        }
+
+        @Override
+        public String toString() { return "<native fn receive>"; }
+    };
+
+    private final LoxCallable close = new HostFunction("close", 0, arguments -> {
+        close();
+        return null;
+    });
+
+    /**
+     * @param capacity How many values can wait in the channel, or
+     *                 Integer.MAX_VALUE for an unbounded one.
+     */
+    Channel(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    LoxCallable method(Token name) {
+        switch (name.lexeme) {
+            case "send": return send;
+            case "receive": return receive;
+            case "close": return close;
+            default: return null;
+        }
+    }
+
+    private void send(Interpreter interpreter, Object value) {
+        if (value == null) throw new NativeError("Can't send nil on a channel.");
+
+        lock.lock();
+        try {
+            while (!closed && values.size() >= capacity) {
+                await(notFull, interpreter);
+            }
+            if (closed) throw new NativeError("Can't send on a closed channel.");
+
+            values.addLast(value);
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while sending on a channel.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object receive(Interpreter interpreter) {
+        lock.lock();
+        try {
+            while (values.isEmpty()) {
+                if (closed) return null;
+                await(notEmpty, interpreter);
+            }
+
+            Object value = values.removeFirst();
+            notFull.signal();
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while receiving from a channel.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the condition is signalled, or until the script has run
+     * out of time, in which case it is stopped.
+     */
+    private static void await(Condition condition, Interpreter interpreter) throws InterruptedException {
+        long timeLeft = interpreter.timeLeft();
+        if (timeLeft <= 0) interpreter.timeRanOut();
+        condition.awaitNanos(timeLeft);
+    }
+
+    private void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
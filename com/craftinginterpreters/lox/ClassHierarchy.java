@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a whole program declares about its classes, as far as calling their
+ * methods is concerned: which class declarations declare a method of each
+ * name, and which names are ever assigned as fields. The resolver builds it
+ * as it goes.
+ *
+ * It is only meaningful for a closed program, one whose instances can only
+ * come from its own class declarations: a script run from a file is one,
+ * but not a line of the REPL or a script evaluated in a LoxContext, since
+ * the lines and scripts before them may have declared classes too. For a
+ * closed program it is sound to assume that
+ *
+ * <ul>
+ * <li>an instance that has a method of a given name got it from one of the
+ *     declarations listed for that name, however often the class statement
+ *     declaring it ran, and whatever its superclass turned out to be;</li>
+ * <li>an instance never has a field whose name is never assigned.</li>
+ * </ul>
+ *
+ * Lox doesn't know the class of a receiver before it runs, so the calls a
+ * method invocation can reach are all the declarations of its name. When
+ * there is only one, the invocation can call it directly; see
+ * Optimizer and Interpreter.visitInvokeExpr().
+ */
+final class ClassHierarchy {
+    private final Map<String, List<Stmt.Function>> methods = new HashMap<>();
+    private final Set<String> fields = new HashSet<>();
+
+    /**
+     * Records a class declaration and its methods.
+     */
+    void declare(Stmt.Class klass) {
+        for (Stmt.Function method : klass.methods) {
+            methods.computeIfAbsent(method.name.lexeme, name -> new ArrayList<>()).add(method);
+        }
+    }
+
+    /**
+     * Records that a field with the given name is assigned somewhere.
+     */
+    void assign(String field) {
+        fields.add(field);
+    }
+
+    /**
+     * Returns the only declaration of a method with the given name, or null
+     * if no class declares one or more than one does.
+     */
+    Stmt.Function target(String method) {
+        List<Stmt.Function> declarations = methods.get(method);
+        return declarations != null && declarations.size() == 1 ? declarations.get(0) : null;
+    }
+
+    /**
+     * Returns whether any instance may have a field with the given name.
+     */
+    boolean mayHaveField(String name) {
+        return fields.contains(name);
+    }
+}
@@ -0,0 +1,49 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * A script that has been scanned, parsed and resolved once and can then be
+ * evaluated any number of times, in any number of contexts.
+ *
+ * The same instance can be evaluated concurrently by several threads, each
+ * in its own LoxContext. The structure of its syntax tree never changes
+ * once compiled; evaluating it only writes the call-site caches and
+ * deoptimization flags listed in the Interpreter class doc. Threads race on
+ * those benignly, since what they write is immutable and checked before it
+ * is used.
+ */
+public final class CompiledScript {
+    private final List<Stmt> statements;
+    private final List<Diagnostic> diagnostics;
+    private final GlobalEnvironment.Slots slots; // the table its globals were given slots in
+
+    CompiledScript(List<Stmt> statements, List<Diagnostic> diagnostics, GlobalEnvironment.Slots slots) {
+        this.statements = List.copyOf(statements);
+        this.diagnostics = List.copyOf(diagnostics);
+        this.slots = slots;
+    }
+
+    /**
+     * Returns the errors found while compiling, in the order they were found.
+     */
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Returns whether the script compiled without errors. Only such scripts
+     * can be evaluated.
+     */
+    public boolean isValid() {
+        return diagnostics.isEmpty();
+    }
+
+    List<Stmt> statements() {
+        return statements;
+    }
+
+    GlobalEnvironment.Slots slots() {
+        return slots;
+    }
+}
@@ -0,0 +1,31 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * An error found while compiling a script.
+ */
+public final class Diagnostic {
+    private final int line;
+    private final String message;
+
+    Diagnostic(int line, String message) {
+        this.line = line;
+        this.message = message;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    /**
+     * Returns the message, including where on the line the error is, as in
+     * "Error at 'print': Expect ';' after variable declaration."
+     */
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "[line " + line + "] " + message;
+    }
+}
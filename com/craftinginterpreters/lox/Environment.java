@@ -3,16 +3,34 @@ package com.craftinginterpreters.lox;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * The variables of a block or function call, looked up by name. Globals
+ * live in a GlobalEnvironment instead, which looks them up by slot.
+ */
 class Environment {
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> values;
 
     Environment() {
         enclosing = null;
+        values = new HashMap<>();
+        if (Metrics.ENABLED) Metrics.environments.increment();
     }
 
     Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        values = new HashMap<>();
+        if (Metrics.ENABLED) Metrics.environments.increment();
+    }
+
+    /**
+     * Creates an environment with room for exactly the given number of
+     * variables, rather than the default sixteen.
+     */
+    Environment(Environment enclosing, int variables) {
+        this.enclosing = enclosing;
+        values = new HashMap<>((int)(variables / 0.75f) + 1);
+        if (Metrics.ENABLED) Metrics.environments.increment();
     }
 
     Object get(Token name) {
@@ -22,7 +40,7 @@ class Environment {
 
         if (enclosing != null) return enclosing.get(name);
 
-        throw new RuntimeError(name, "Undefined variable '" + "'.");
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
     void assign(Token name, Object value) {
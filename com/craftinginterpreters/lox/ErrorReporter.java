@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Collects the errors found while compiling and running one script.
+ *
+ * Each run gets its own reporter, handed to the Scanner, Parser, Resolver
+ * and Interpreter working on it, so scripts running on different threads
+ * don't see each other's errors.
+ */
+class ErrorReporter {
+    private final PrintStream err;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    ErrorReporter() {
+        this(System.err);
+    }
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        }
+        else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    /**
+     * Reports an error that aborted the script, also emitting it as a
+     * Flight Recorder event when a recording is running.
+     *
+     * @param error The error that was thrown.
+     */
+    void runtimeError(RuntimeError error) {
+        if (Events.recording()) {
+            Events.RuntimeError event = new Events.RuntimeError();
+            if (event.shouldCommit()) {
+                event.message = error.getMessage();
+                event.line = error.token.line;
+                event.commit();
+            }
+        }
+
+        err.println(
+            error.getMessage() +
+            "\n[line " + error.token.line + "]"
+        );
+
+        hadRuntimeError = true;
+    }
+
+    void report(int line, String where, String message) {
+        err.println(
+            "[line " + line + "] Error" + where + ": " + message
+        );
+        hadError = true;
+    }
+}
@@ -0,0 +1,280 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the callbacks a script has scheduled, once its top level is done:
+ *
+ * <pre>
+ * var timer = setTimeout(fn, ms);  // calls fn() once, after ms milliseconds
+ * var ticker = setInterval(fn, ms); // calls fn() every ms milliseconds
+ * clearTimeout(timer);              // or clearInterval(ticker)
+ * delay(ms).then(fn);               // a promise settled after ms milliseconds, see Promise
+ * </pre>
+ *
+ * Everything runs on the interpreter's own thread, one callback at a time
+ * and each to completion, so callbacks never race with each other and
+ * thousands of pending timers or async operations cost a few objects each
+ * rather than a thread each. The loop runs until there are no callbacks
+ * ready, no timers left and no async operation still under way.
+ *
+ * Async operations, such as the host's AsyncFunctions, may complete on any
+ * thread. Their completion is posted to an inbox the loop waits on, and
+ * their promise is settled on the loop's thread when it takes it out.
+ *
+ * An interpreter only creates its loop when a script first schedules
+ * something, so scripts that don't are unaffected.
+ */
+final class EventLoop {
+    final Interpreter interpreter;
+
+    // Callbacks ready to run, in order
+    private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(
+        Comparator.comparingLong((Timer timer) -> timer.due).thenComparingLong(timer -> timer.sequence));
+    // Completions posted by other threads
+    private final LinkedBlockingQueue<Runnable> inbox = new LinkedBlockingQueue<>();
+
+    private long sequence = 0;
+    private int pending = 0; // async operations started whose completion hasn't been taken from the inbox
+
+    EventLoop(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    static void define(Environment globals) {
+        globals.define("setTimeout", new Schedule("setTimeout", false));
+        globals.define("setInterval", new Schedule("setInterval", true));
+        globals.define("clearTimeout", new Clear("clearTimeout"));
+        globals.define("clearInterval", new Clear("clearInterval"));
+        globals.define("delay", new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                EventLoop loop = interpreter.eventLoop();
+                Promise promise = new Promise(loop);
+                loop.schedule(millis("delay", arguments.get(0)), -1, () -> promise.resolve(null));
+                return promise;
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+    }
+
+    /**
+     * A callback waiting for its time. Scripts only ever hold it to cancel it.
+     */
+    private static class Timer {
+        long due;
+        long sequence;
+        final long interval; // in nanoseconds, or -1 if the timer only fires once
+        final Runnable callback;
+        boolean cancelled = false;
+
+        Timer(long due, long sequence, long interval, Runnable callback) {
+            this.due = due;
+            this.sequence = sequence;
+            this.interval = interval;
+            this.callback = callback;
+        }
+
+        @Override
+        public String toString() {
+            return "<timer>";
+        }
+    }
+
+    private Timer schedule(long delayMillis, long intervalMillis, Runnable callback) {
+        long interval = intervalMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        Timer timer = new Timer(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis),
+            sequence++, interval, callback);
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Cancels a timer, taking it out of the queue so that the loop doesn't
+     * wait for it. An interval whose callback is already ready to run still
+     * runs that once.
+     */
+    private void cancel(Timer timer) {
+        timer.cancelled = true;
+        timers.remove(timer);
+    }
+
+    /**
+     * Queues a callback to run as soon as the ones already ready have.
+     * Must be called on the loop's thread.
+     */
+    void enqueue(Runnable callback) {
+        ready.addLast(callback);
+    }
+
+    /**
+     * Returns a promise settled when the given operation completes, on
+     * whichever thread that happens.
+     *
+     * @param operation The operation, already started.
+     * @param name The name of the function that started it, for its errors.
+     */
+    Promise start(CompletionStage<?> operation, String name) {
+        Promise promise = new Promise(this);
+        pending++;
+        operation.whenComplete((value, error) -> inbox.add(() -> {
+            pending--;
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                promise.reject(name + " failed: " + cause.getMessage());
+            } else {
+                promise.resolve(LoxEngine.toLox(value));
+            }
+        }));
+        return promise;
+    }
+
+    /**
+     * Runs callbacks until there is nothing left to wait for.
+     */
+    void run() {
+        while (true) {
+            for (Runnable completion; (completion = inbox.poll()) != null; ) {
+                ready.addLast(completion);
+            }
+
+            long now = System.nanoTime();
+            while (!timers.isEmpty() && timers.peek().due - now <= 0) {
+                Timer timer = timers.poll();
+                if (timer.cancelled) continue;
+
+                ready.addLast(timer.callback);
+                if (timer.interval >= 0) {
+                    // Rescheduled from its due time rather than from now, so that it doesn't drift
+                    timer.due += timer.interval;
+                    timer.sequence = sequence++;
+                    timers.add(timer);
+                }
+            }
+
+            if (!ready.isEmpty()) {
+                while (!ready.isEmpty()) {
+                    ready.pollFirst().run();
+                }
+                continue;
+            }
+
+            if (timers.isEmpty() && pending == 0) return;
+
+            long timeLeft = interpreter.timeLeft();
+            if (timeLeft <= 0) {
+                interpreter.timeRanOut();
+                return;
+            }
+
+            try {
+                long wait = timers.isEmpty() ? Long.MAX_VALUE : timers.peek().due - System.nanoTime();
+                Runnable completion = inbox.poll(Math.min(wait, timeLeft), TimeUnit.NANOSECONDS);
+                if (completion != null) ready.addLast(completion);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long millis(String name, Object value) {
+        if (!(value instanceof Double) || (double)value < 0) {
+            throw new NativeError(name + " expects a number of milliseconds.");
+        }
+        return (long)(double)value;
+    }
+
+    private static class Schedule implements LoxCallable {
+        private final String name;
+        private final boolean repeat;
+
+        Schedule(String name, boolean repeat) {
+            this.name = name;
+            this.repeat = repeat;
+        }
+
+        @Override
+        public int arity() { return 2; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            if (!(arguments.get(0) instanceof LoxCallable) ||
+                    ((LoxCallable)arguments.get(0)).arity() > 0) {
+                throw new NativeError(name + " expects a function taking no arguments.");
+            }
+            LoxCallable fn = (LoxCallable)arguments.get(0);
+            long ms = millis(name, arguments.get(1));
+
+            // Errors in the callback are reported where it was scheduled
+            Token where = interpreter.lastCall;
+            return interpreter.eventLoop().schedule(ms, repeat ? Math.max(ms, 1) : -1,
+                () -> interpreter.callBack(where, fn));
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    private static class Clear implements LoxCallable {
+        private final String name;
+
+        Clear(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int arity() { return 1; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            if (!(arguments.get(0) instanceof Timer)) {
+                throw new NativeError(name + " expects a timer.");
+            }
+            interpreter.eventLoop().cancel((Timer)arguments.get(0));
+            return null;
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    /**
+     * Adapts an AsyncFunction registered by the host into a LoxCallable
+     * returning a promise.
+     */
+    static class AsyncHostFunction implements LoxCallable {
+        private final String name;
+        private final int arity;
+        private final AsyncFunction function;
+
+        AsyncHostFunction(String name, int arity, AsyncFunction function) {
+            this.name = name;
+            this.arity = arity;
+            this.function = function;
+        }
+
+        @Override
+        public int arity() { return arity; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return interpreter.eventLoop().start(function.call(arguments), name);
+        }
+
+        @Override
+        public String toString() { return "<native fn " + name + ">"; }
+    }
+}
@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events describing what the interpreter is doing, so
+ * that Lox-level activity shows up in the same recordings as GC and JIT.
+ *
+ * Every event is disabled unless a recording turns it on. Emission sites
+ * first check recording(): loading an event class boots the JFR machinery,
+ * which would add hundreds of milliseconds to the start-up of every script.
+ * Past that check the usual idiom is used: create the event, begin() it,
+ * and only fill in its fields once shouldCommit() says it will be kept.
+ */
+final class Events {
+    private Events() {}
+
+    /**
+     * Returns whether Flight Recorder has been started in this JVM, either on
+     * the command line or later on through jcmd. Until then no event class
+     * needs to be touched.
+     */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("lox.FunctionCall")
+    @Label("Lox Function Call")
+    @Category("Lox")
+    @Description("A call to a Lox function or method, from entry to return")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class FunctionCall extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Arity")
+        int arity;
+    }
+
+    @Name("lox.Instantiation")
+    @Label("Lox Instantiation")
+    @Category("Lox")
+    @Description("A class being called to create a new instance, including its initializer")
+    @Threshold("1 ms") // there is one per instance, so only the slow ones are kept
+    @StackTrace(false)
+    static class Instantiation extends Event {
+        @Label("Class")
+        String className;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @Description("A runtime error that aborted the script")
+    @StackTrace(false)
+    static class RuntimeError extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("lox.Phase")
+    @Label("Lox Phase")
+    @Category("Lox")
+    @Description("One of the front-end phases run on a piece of source code")
+    @StackTrace(false)
+    static class Phase extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Source Length")
+        int sourceLength;
+    }
+}
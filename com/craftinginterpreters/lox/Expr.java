@@ -17,6 +17,16 @@ abstract class Expr {
 		R visitThisExpr(This expr);
 		R visitUnaryExpr(Unary expr);
 		R visitVariableExpr(Variable expr);
+		R visitCompareConstantExpr(CompareConstant expr);
+		R visitCompareVariablesExpr(CompareVariables expr);
+		R visitIncrementExpr(Increment expr);
+		R visitIsNilExpr(IsNil expr);
+		R visitUpdateFieldExpr(UpdateField expr);
+		R visitInvokeExpr(Invoke expr);
+		R visitSuperInvokeExpr(SuperInvoke expr);
+		R visitInlineExpr(Inline expr);
+		R visitArgumentExpr(Argument expr);
+		R visitNumberBinaryExpr(NumberBinary expr);
 	}
 
 	static class Assign extends Expr {
@@ -32,6 +42,8 @@ abstract class Expr {
 
 		final Token name;
 		final Expr value;
+		int depth = -1;
+		int slot = -1;
 	}
 
 	static class Binary extends Expr {
@@ -66,6 +78,7 @@ abstract class Expr {
 		final Expr callee;
 		final Token paren;
 		final List<Expr> arguments;
+		Object checked = null;
 	}
 
 	static class Get extends Expr {
@@ -81,6 +94,7 @@ abstract class Expr {
 
 		final Expr object;
 		final Token name;
+		Object member = null;
 	}
 
 	static class Grouping extends Expr {
@@ -156,6 +170,7 @@ abstract class Expr {
 
 		final Token keyword;
 		final Token method;
+		int depth = -1;
 	}
 
 	static class This extends Expr {
@@ -169,6 +184,7 @@ abstract class Expr {
 		}
 
 		final Token keyword;
+		int depth = -1;
 	}
 
 	static class Unary extends Expr {
@@ -197,6 +213,178 @@ abstract class Expr {
 		}
 
 		final Token name;
+		int depth = -1;
+		int slot = -1;
+	}
+
+	static class CompareConstant extends Expr {
+		CompareConstant(Expr.Variable left, Token operator, double right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitCompareConstantExpr(this);
+		}
+
+		final Expr.Variable left;
+		final Token operator;
+		final double right;
+	}
+
+	static class CompareVariables extends Expr {
+		CompareVariables(Expr.Variable left, Token operator, Expr.Variable right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitCompareVariablesExpr(this);
+		}
+
+		final Expr.Variable left;
+		final Token operator;
+		final Expr.Variable right;
+	}
+
+	static class Increment extends Expr {
+		Increment(Expr.Variable variable, Token operator, double delta) {
+			this.variable = variable;
+			this.operator = operator;
+			this.delta = delta;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIncrementExpr(this);
+		}
+
+		final Expr.Variable variable;
+		final Token operator;
+		final double delta;
+	}
+
+	static class IsNil extends Expr {
+		IsNil(Expr operand, boolean negated) {
+			this.operand = operand;
+			this.negated = negated;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitIsNilExpr(this);
+		}
+
+		final Expr operand;
+		final boolean negated;
+	}
+
+	static class UpdateField extends Expr {
+		UpdateField(Expr.Get field, Token name, Token operator, Expr value) {
+			this.field = field;
+			this.name = name;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitUpdateFieldExpr(this);
+		}
+
+		final Expr.Get field;
+		final Token name;
+		final Token operator;
+		final Expr value;
+	}
+
+	static class Invoke extends Expr {
+		Invoke(Expr.Get method, Expr.Call call) {
+			this.method = method;
+			this.call = call;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitInvokeExpr(this);
+		}
+
+		final Expr.Get method;
+		final Expr.Call call;
+		Object dispatch = null;
+		Stmt.Function target = null;
+		boolean fieldless = false;
+		Expr body = null;
+	}
+
+	static class SuperInvoke extends Expr {
+		SuperInvoke(Expr.Super method, Expr.Call call) {
+			this.method = method;
+			this.call = call;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitSuperInvokeExpr(this);
+		}
+
+		final Expr.Super method;
+		final Expr.Call call;
+		Object dispatch = null;
+	}
+
+	static class Inline extends Expr {
+		Inline(Expr.Call call, Stmt.Function function, Expr body) {
+			this.call = call;
+			this.function = function;
+			this.body = body;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitInlineExpr(this);
+		}
+
+		final Expr.Call call;
+		final Stmt.Function function;
+		final Expr body;
+		boolean deoptimized = false;
+	}
+
+	static class Argument extends Expr {
+		Argument(Token name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitArgumentExpr(this);
+		}
+
+		final Token name;
+		final int index;
+	}
+
+	static class NumberBinary extends Expr {
+		NumberBinary(Expr left, Token operator, Expr right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitNumberBinaryExpr(this);
+		}
+
+		final Expr left;
+		final Token operator;
+		final Expr right;
 	}
 
 
@@ -0,0 +1,193 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * What calling a generator function returns: a function containing yield.
+ * Its body runs lazily, up to the next yield each time a value is needed:
+ *
+ * <pre>
+ * generator.next() // runs to the next yield and returns its value; nil once the body is over
+ * generator.done() // whether the body is over, running ahead to the next yield to find out
+ * </pre>
+ *
+ * The interpreter runs statements recursively on the Java stack, which a
+ * generator can't leave in the middle of and come back to later without a
+ * thread of its own. So a generator keeps its own stack of frames instead,
+ * one per block, loop or branch it is in, and steps through them itself.
+ * Only the statements that contain a yield, as marked by the resolver, are
+ * taken apart this way; every other statement, and every expression, is
+ * handed to the interpreter whole. Since yield is a statement, no expression
+ * ever needs to be suspended halfway through.
+ *
+ * A generator is resumed by the interpreter that asks it for a value, and
+ * must only be used by one thread at a time.
+ */
+final class Generator extends NativeObject {
+    private final String name;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private boolean running = false;
+    private boolean hasValue = false; // whether done() has run ahead to a value next() hasn't returned yet
+    private Object value;
+
+    private final LoxCallable next = new LoxCallable() {
+        @Override
+        public int arity() { return 0; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return next(interpreter);
+        }
+
+        @Override
+        public String toString() { return "<native fn next>"; }
+    };
+
+    private final LoxCallable done = new LoxCallable() {
+        @Override
+        public int arity() { return 0; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return !advance(interpreter);
+        }
+
+        @Override
+        public String toString() { return "<native fn done>"; }
+    };
+
+    /**
+     * @param declaration The generator function.
+     * @param environment The environment of the call, holding the arguments.
+     */
+    Generator(Stmt.Function declaration, Environment environment) {
+        this.name = declaration.name.lexeme;
+        frames.push(new Frame(declaration.body, environment));
+    }
+
+    @Override
+    LoxCallable method(Token name) {
+        switch (name.lexeme) {
+            case "next": return next;
+            case "done": return done;
+            default: return null;
+        }
+    }
+
+    private Object next(Interpreter interpreter) {
+        if (!advance(interpreter)) return null;
+
+        Object result = value;
+        hasValue = false;
+        value = null;
+        return result;
+    }
+
+    /**
+     * Runs the body up to the next yield, unless that has already been done.
+     *
+     * @return false if the body is over instead.
+     */
+    private boolean advance(Interpreter interpreter) {
+        if (hasValue) return true;
+        if (frames.isEmpty()) return false;
+        if (running) throw new NativeError("A generator can't resume itself.");
+
+        running = true;
+        try {
+            hasValue = resume(interpreter);
+        } catch (RuntimeException error) {
+            // A generator that failed is over
+            frames.clear();
+            throw error;
+        } finally {
+            running = false;
+        }
+        return hasValue;
+    }
+
+    private boolean resume(Interpreter interpreter) {
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            Stmt stmt = frame.next(interpreter);
+            if (stmt == null) {
+                frames.pop();
+                continue;
+            }
+
+            Environment environment = frame.environment;
+            if (stmt instanceof Stmt.Yield) {
+                value = interpreter.evaluateIn(((Stmt.Yield)stmt).value, environment);
+                return true;
+            } else if (stmt instanceof Stmt.Block && ((Stmt.Block)stmt).yields) {
+                interpreter.allocated(Interpreter.Allocation.ENVIRONMENT);
+                frames.push(new Frame(((Stmt.Block)stmt).statements, new Environment(environment)));
+            } else if (stmt instanceof Stmt.While && ((Stmt.While)stmt).yields) {
+                frames.push(new Loop((Stmt.While)stmt, environment));
+            } else if (stmt instanceof Stmt.If && ((Stmt.If)stmt).yields) {
+                Stmt.If branch = (Stmt.If)stmt;
+                Stmt taken = interpreter.isTruthy(interpreter.evaluateIn(branch.condition, environment))
+                    ? branch.thenBranch
+                    : branch.elseBranch;
+                if (taken != null) frames.push(new Frame(List.of(taken), environment));
+            } else {
+                try {
+                    interpreter.executeIn(stmt, environment);
+                } catch (Return returnValue) {
+                    frames.clear();
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A list of statements being stepped through, in the environment they
+     * run in.
+     */
+    private static class Frame {
+        final List<Stmt> statements;
+        final Environment environment;
+        private int index = 0;
+
+        Frame(List<Stmt> statements, Environment environment) {
+            this.statements = statements;
+            this.environment = environment;
+        }
+
+        /**
+         * Returns the next statement to run, or null when there are no more.
+         */
+        Stmt next(Interpreter interpreter) {
+            return index < statements.size() ? statements.get(index++) : null;
+        }
+    }
+
+    private static class Loop extends Frame {
+        private final Stmt.While loop;
+        private boolean started = false;
+
+        Loop(Stmt.While loop, Environment environment) {
+            super(List.of(), environment);
+            this.loop = loop;
+        }
+
+        @Override
+        Stmt next(Interpreter interpreter) {
+            if (started) interpreter.backEdge(loop);
+            started = true;
+
+            return interpreter.isTruthy(interpreter.evaluateIn(loop.condition, environment))
+                ? loop.body
+                : null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<generator " + name + ">";
+    }
+}
@@ -0,0 +1,336 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The global variables of an interpreter, kept in arrays rather than a
+ * map. Every global name is given a slot in a Slots table the first time it
+ * is seen, and the resolver stores it on the Variable and Assign nodes
+ * naming that global. Reading a global is then two array accesses, with no
+ * hashing.
+ *
+ * A slot belongs to a name rather than to a definition, so redefining a
+ * global, as the REPL does with every "var" or "fun" typed again, writes
+ * the same slot, and every node that cached it sees the new value at once.
+ * There is nothing to invalidate.
+ *
+ * A table is shared by the scripts a LoxEngine compiles and the contexts it
+ * creates, and only by them; the interpreter of the command line has its
+ * own. Slots are never given back, so a table grows with the number of
+ * distinct global names compiled against it, and goes away with its engine.
+ * An environment doesn't grow with the table, though: it keeps its slots in
+ * pages, and only allocates the pages it writes.
+ */
+final class GlobalEnvironment extends Environment {
+    // Stands for a variable that isn't defined, since nil is stored as null
+    private static final Object UNDEFINED = new Object();
+    // Stands for a slot not written in a page, whose value is in the layers below it, if any
+    private static final Object INHERITED = new Object();
+
+    private static final int PAGE_BITS = 5;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final Object[][] NO_PAGES = new Object[0][];
+    private static final int MIN_PAGES = 4;
+    // Forks of forks read through this many layers at most before one is flattened
+    private static final int MAX_LAYERS = 4;
+
+    /**
+     * The slots given to global names, and the name of each slot.
+     */
+    static final class Slots {
+        private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[64];
+
+        /**
+         * Returns the slot of a global name, giving it one if it has none yet.
+         */
+        int slot(String name) {
+            Integer slot = slots.get(name);
+            return slot != null ? slot : newSlot(name);
+        }
+
+        private synchronized int newSlot(String name) {
+            Integer existing = slots.get(name);
+            if (existing != null) return existing;
+
+            int slot = slots.size();
+            if (slot == names.length) names = Arrays.copyOf(names, slot * 2);
+            names[slot] = name;
+            slots.put(name, slot);
+            return slot;
+        }
+
+        /**
+         * Returns the slot of a global name, or null if it has none, without
+         * giving it one.
+         */
+        Integer find(String name) {
+            return slots.get(name);
+        }
+
+        String name(int slot) {
+            return names[slot];
+        }
+    }
+
+    // The globals of an environment as they were when it was forked, never written again
+    private static final class Layer {
+        final Object[][] pages;
+        final Layer next;
+        final int depth;
+
+        Layer(Object[][] pages, Layer next) {
+            this.pages = pages;
+            this.next = next;
+            this.depth = next == null ? 1 : next.depth + 1;
+        }
+    }
+
+    final Slots slots;
+    // What was written here, by slot, in pages of PAGE_SIZE slots; a page is null until written
+    private Object[][] pages = NO_PAGES;
+    private final Layer inherited; // what the environment this one was forked from had, or null
+    // Whether pages is also a layer of a fork, and so must be copied before it is written
+    private boolean shared = false;
+    // The pages allocated since the last fork, which no layer shares and can be written in place
+    private final BitSet owned = new BitSet();
+    // The slots defined or assigned here since this environment was created
+    private final BitSet written = new BitSet();
+
+    /**
+     * Where scripts look up, by name and as Java values, the globals that
+     * aren't defined here, such as the global scope of a javax.script
+     * context; null if nowhere. Assigning one of them defines it here.
+     * Forks share it.
+     */
+    Map<String, Object> fallback = null;
+
+    GlobalEnvironment(Slots slots) {
+        this(slots, null);
+    }
+
+    private GlobalEnvironment(Slots slots, Layer inherited) {
+        this.slots = slots;
+        this.inherited = inherited;
+    }
+
+    /**
+     * Gets the value of the global in the given slot.
+     *
+     * @param slot The slot stored on the node by the resolver.
+     * @param name The name, for the error if the global isn't defined.
+     */
+    Object get(int slot, Token name) {
+        Object value = lookUp(slot);
+        if (value != UNDEFINED) return value;
+
+        Map<String, Object> fallback = this.fallback;
+        if (fallback != null && fallback.containsKey(name.lexeme)) {
+            return LoxEngine.toLox(fallback.get(name.lexeme));
+        }
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    /**
+     * Assigns the global in the given slot, which must already be defined,
+     * here or in the fallback.
+     */
+    void assign(int slot, Token name, Object value) {
+        if (lookUp(slot) == UNDEFINED && (fallback == null || !fallback.containsKey(name.lexeme))) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+
+        write(slot, value);
+    }
+
+    private Object lookUp(int slot) {
+        Object value = find(pages, slot);
+        return value != INHERITED ? value : inherited(inherited, slot);
+    }
+
+    private static Object find(Object[][] pages, int slot) {
+        int index = slot >>> PAGE_BITS;
+        if (index < pages.length) {
+            Object[] page = pages[index];
+            if (page != null) return page[slot & PAGE_MASK];
+        }
+        return INHERITED;
+    }
+
+    private static Object inherited(Layer layer, int slot) {
+        for (; layer != null; layer = layer.next) {
+            Object value = find(layer.pages, slot);
+            if (value != INHERITED) return value;
+        }
+        return UNDEFINED;
+    }
+
+    private void write(int slot, Object value) {
+        int index = slot >>> PAGE_BITS;
+        if (shared || index >= pages.length) {
+            int length = Math.max(pages.length, MIN_PAGES);
+            while (length <= index) length *= 2;
+            pages = Arrays.copyOf(pages, length);
+            shared = false;
+        }
+
+        Object[] page = pages[index];
+        if (page == null) {
+            page = new Object[PAGE_SIZE];
+            Arrays.fill(page, INHERITED);
+            pages[index] = page;
+            owned.set(index);
+        } else if (!owned.get(index)) {
+            page = page.clone(); // the forks keep reading the original
+            pages[index] = page;
+            owned.set(index);
+        }
+
+        page[slot & PAGE_MASK] = value;
+        written.set(slot);
+    }
+
+    @Override
+    Object get(Token name) {
+        return get(slots.slot(name.lexeme), name);
+    }
+
+    @Override
+    void assign(Token name, Object value) {
+        assign(slots.slot(name.lexeme), name, value);
+    }
+
+    @Override
+    void define(String name, Object value) {
+        write(slots.slot(name), value);
+    }
+
+    /**
+     * Gets the value of a global, or null if there is none, without raising
+     * a runtime error.
+     *
+     * @param name The name of the variable.
+     * @return The value of the variable, or null.
+     */
+    Object getOrNull(String name) {
+        Object value = lookUp(name);
+        return value == UNDEFINED ? null : value;
+    }
+
+    /**
+     * Returns whether a global is defined.
+     */
+    boolean isDefined(String name) {
+        return lookUp(name) != UNDEFINED;
+    }
+
+    private Object lookUp(String name) {
+        // Names that were never used have no slot, and don't get one just for being asked about
+        Integer slot = slots.find(name);
+        return slot != null ? lookUp(slot) : UNDEFINED;
+    }
+
+    /**
+     * Undefines a global.
+     *
+     * @return Its value, or null if it wasn't defined.
+     */
+    Object remove(String name) {
+        Object value = lookUp(name);
+        if (value == UNDEFINED) return null;
+
+        write(slots.find(name), UNDEFINED);
+        return value;
+    }
+
+    /**
+     * Returns a copy of the globals this environment has defined or
+     * assigned itself since it was created. Globals it only inherited from
+     * the environment it was forked from are not included; see all().
+     * Forking it doesn't change what it returns.
+     */
+    Map<String, Object> values() {
+        Map<String, Object> values = new HashMap<>();
+        for (int slot = written.nextSetBit(0); slot >= 0; slot = written.nextSetBit(slot + 1)) {
+            Object value = lookUp(slot);
+            if (value != UNDEFINED) values.put(slots.name(slot), value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns a copy of every global defined in this environment.
+     */
+    Map<String, Object> all() {
+        int length = pages.length;
+        for (Layer layer = inherited; layer != null; layer = layer.next) {
+            length = Math.max(length, layer.pages.length);
+        }
+
+        Map<String, Object> all = new HashMap<>();
+        for (int slot = 0; slot < length * PAGE_SIZE; slot++) {
+            Object value = lookUp(slot);
+            if (value != UNDEFINED) all.put(slots.name(slot), value);
+        }
+        return all;
+    }
+
+    /**
+     * Forks the globals in constant time. The fork starts with every global
+     * defined here, but globals defined or assigned afterwards, in either
+     * environment, are only visible in the one that wrote them.
+     *
+     * The fork reads through to what was written here, and to what this
+     * environment inherited in turn, without copying any of it. Both then
+     * copy a page of PAGE_SIZE slots before writing to it, and the fork
+     * only allocates the pages it writes, so its memory grows with what it
+     * writes rather than with the number of global names. The values
+     * themselves are not copied: an instance reachable from a global is the
+     * same object in every fork.
+     *
+     * Forks of forks read through one more layer each, up to MAX_LAYERS,
+     * beyond which a fork gets a single layer merging them.
+     *
+     * @return The new global environment.
+     */
+    GlobalEnvironment fork() {
+        Layer layer = inherited;
+        if (pages.length > 0) {
+            layer = new Layer(pages, layer);
+            shared = true;
+            owned.clear();
+        }
+        if (layer != null && layer.depth > MAX_LAYERS) layer = flatten(layer);
+
+        GlobalEnvironment fork = new GlobalEnvironment(slots, layer);
+        fork.fallback = fallback;
+        return fork;
+    }
+
+    private static Layer flatten(Layer layer) {
+        int length = 0;
+        for (Layer each = layer; each != null; each = each.next) {
+            length = Math.max(length, each.pages.length);
+        }
+
+        Object[][] pages = new Object[length][];
+        for (int index = 0; index < length; index++) {
+            for (int slot = index * PAGE_SIZE; slot < (index + 1) * PAGE_SIZE; slot++) {
+                Object value = inherited(layer, slot);
+                if (value == UNDEFINED) continue;
+
+                if (pages[index] == null) {
+                    pages[index] = new Object[PAGE_SIZE];
+                    Arrays.fill(pages[index], INHERITED);
+                }
+                pages[index][slot & PAGE_MASK] = value;
+            }
+        }
+        return new Layer(pages, null);
+    }
+}
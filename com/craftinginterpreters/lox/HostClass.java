@@ -0,0 +1,157 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Java class as scripts see it. Defined as a global with
+ * LoxEngine.defineClass(), calling it calls one of its public constructors,
+ * and its public static methods are its methods:
+ *
+ * <pre>
+ * var list = ArrayList();
+ * print Math.max(1, 2);
+ * </pre>
+ *
+ * It also holds the public instance methods that the HostObjects wrapping
+ * objects of the class have.
+ *
+ * There is one for each Java class, shared by every interpreter. Its
+ * members are only turned into method handles the first time they are
+ * looked up, and then kept; see HostMember.
+ */
+final class HostClass extends NativeObject implements LoxCallable {
+    private static final ClassValue<HostClass> classes = new ClassValue<>() {
+        @Override
+        protected HostClass computeValue(Class<?> type) {
+            return new HostClass(type);
+        }
+    };
+
+    final Class<?> type;
+    // The public methods by name, turned into members as they are looked up
+    private final Map<String, List<Method>> declared = new HashMap<>();
+    private final Map<String, HostMember> methods = new ConcurrentHashMap<>();
+    private final Map<String, HostMember> statics = new ConcurrentHashMap<>();
+    private final HostMember constructor; // null if it has no public constructor
+
+    private HostClass(Class<?> type) {
+        this.type = type;
+        // Bridge methods are kept: they are how a public class makes public
+        // the methods it inherits from a class that isn't
+        for (Method method : type.getMethods()) {
+            declared.computeIfAbsent(method.getName(), name -> new ArrayList<>()).add(method);
+        }
+
+        List<Executable> constructors = Modifier.isAbstract(type.getModifiers())
+            ? List.of()
+            : HostMember.accessible(type, Arrays.asList(type.getConstructors()));
+        constructor = constructors.isEmpty() ? null : new HostMember(type, type.getSimpleName(), constructors);
+    }
+
+    /**
+     * Returns the one HostClass of a Java class.
+     */
+    static HostClass of(Class<?> type) {
+        return classes.get(type);
+    }
+
+    /**
+     * Returns the public instance method with the given name, or null if
+     * there is none.
+     */
+    HostMember method(String name) {
+        HostMember method = methods.get(name);
+        if (method != null) return method;
+
+        HostMember created = member(name, false);
+        if (created == null) return null;
+        method = methods.putIfAbsent(name, created);
+        return method != null ? method : created;
+    }
+
+    /**
+     * Returns the public static method with the given name, or null if
+     * there is none.
+     */
+    HostMember staticMethod(String name) {
+        HostMember method = statics.get(name);
+        if (method != null) return method;
+
+        HostMember created = member(name, true);
+        if (created == null) return null;
+        method = statics.putIfAbsent(name, created);
+        return method != null ? method : created;
+    }
+
+    private HostMember member(String name, boolean isStatic) {
+        List<Method> overloads = new ArrayList<>();
+        for (Method method : declared.getOrDefault(name, List.of())) {
+            if (Modifier.isStatic(method.getModifiers()) == isStatic) overloads.add(method);
+        }
+
+        List<Executable> accessible = HostMember.accessible(type, overloads);
+        return accessible.isEmpty() ? null : new HostMember(type, name, accessible);
+    }
+
+    @Override
+    LoxCallable method(Token name) {
+        return staticMethod(name.lexeme);
+    }
+
+    // Called, it calls a constructor
+
+    private HostMember constructor() {
+        if (constructor == null) {
+            throw new NativeError(type.getName() + " has no public constructor.");
+        }
+        return constructor;
+    }
+
+    @Override
+    public int arity() {
+        return constructor == null ? -1 : constructor.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return constructor().call(interpreter, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return constructor().call0(interpreter);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return constructor().call1(interpreter, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return constructor().call2(interpreter, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return constructor().call3(interpreter, a, b, c);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return constructor().call4(interpreter, a, b, c, d);
+    }
+
+    @Override
+    public String toString() {
+        return "<java class " + type.getName() + ">";
+    }
+}
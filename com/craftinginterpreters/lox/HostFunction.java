@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Adapts a NativeFunction registered by the host into a LoxCallable.
+ */
+class HostFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final NativeFunction function;
+
+    HostFunction(String name, int arity, NativeFunction function) {
+        this.name = name;
+        this.arity = arity;
+        this.function = function;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return LoxEngine.toLox(function.call(arguments));
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+}
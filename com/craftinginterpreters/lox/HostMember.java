@@ -0,0 +1,558 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The public methods of a Java class that share a name, or its public
+ * constructors, as one callable: a call runs the overload that takes as
+ * many arguments as it passes. When several do, the first one the
+ * arguments fit is run, trying the overloads taking doubles before those
+ * taking other numbers, and those before the ones taking Object.
+ *
+ * Every overload is turned into a method handle when the member is first
+ * looked up, with the conversions of its arguments and result built into
+ * the handle. Calling it is then a single invokeExact(), with no
+ * reflection:
+ *
+ * <pre>
+ * Lox value         Java parameter
+ * number            double, float, long, int, short, byte, or their boxes;
+ *                   the integral types only take whole numbers in range
+ * string            String, CharSequence, or char for a single character
+ * true, false       boolean, Boolean
+ * nil               any reference type
+ * a Java object     its own type or one of its supertypes
+ * anything else     Object
+ * </pre>
+ *
+ * Results go the other way: primitive numbers become doubles, chars become
+ * strings, void becomes nil, and Java objects that aren't Lox values are
+ * wrapped in a HostObject so that scripts can call their methods in turn.
+ *
+ * Instance methods are only called through bind(). Static methods and
+ * constructors take no receiver, and are called directly.
+ */
+final class HostMember implements LoxCallable {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private static final MethodHandle TO_DOUBLE = converter("toDouble", double.class, Object.class);
+    private static final MethodHandle TO_FLOAT = converter("toFloat", float.class, Object.class);
+    private static final MethodHandle TO_LONG = converter("toLong", long.class, Object.class);
+    private static final MethodHandle TO_INT = converter("toInt", int.class, Object.class);
+    private static final MethodHandle TO_SHORT = converter("toShort", short.class, Object.class);
+    private static final MethodHandle TO_BYTE = converter("toByte", byte.class, Object.class);
+    private static final MethodHandle TO_CHAR = converter("toChar", char.class, Object.class);
+    private static final MethodHandle TO_BOOLEAN = converter("toBoolean", boolean.class, Object.class);
+    private static final MethodHandle TO_REFERENCE = converter("toReference", Object.class, Class.class, Object.class);
+    private static final MethodHandle IS_NIL = converter("isNil", boolean.class, Object.class);
+    private static final MethodHandle FROM_CHAR = converter("fromChar", String.class, char.class);
+    private static final MethodHandle FROM_REFERENCE = converter("fromReference", Object.class, Object.class);
+
+    final Class<?> owner; // the class the member was looked up in
+    private final String name;
+    // The overloads by the number of arguments they take, in the order they are tried
+    private final Overload[][] overloads;
+    private final int arity;
+
+    /**
+     * @param owner The class the member was looked up in.
+     * @param name The name scripts know the member by.
+     * @param executables The overloads, accessible to every module.
+     */
+    HostMember(Class<?> owner, String name, List<? extends Executable> executables) {
+        this.owner = owner;
+        this.name = name;
+
+        int most = 0;
+        for (Executable executable : executables) {
+            most = Math.max(most, executable.getParameterCount());
+        }
+
+        List<List<Overload>> byArity = new ArrayList<>();
+        for (int i = 0; i <= most; i++) byArity.add(new ArrayList<>());
+        for (Executable executable : executables) {
+            byArity.get(executable.getParameterCount()).add(new Overload(executable));
+        }
+
+        overloads = new Overload[most + 1][];
+        int arity = -2;
+        for (int i = 0; i <= most; i++) {
+            List<Overload> candidates = byArity.get(i);
+            candidates.sort(Comparator.comparingInt(overload -> overload.rank));
+            overloads[i] = candidates.toArray(new Overload[0]);
+            if (!candidates.isEmpty()) arity = arity == -2 ? i : -1;
+        }
+        this.arity = arity == -2 ? -1 : arity;
+    }
+
+    /**
+     * Returns the number of arguments the member takes, or -1 if its
+     * overloads take different numbers of them, in which case it checks the
+     * number of arguments itself.
+     */
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return invoke(null, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke0(null);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(null, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(null, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(null, a, b, c);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return invoke4(null, a, b, c, d);
+    }
+
+    /**
+     * Returns the member as a method of the given Java object.
+     */
+    LoxCallable bind(Object receiver) {
+        return new Bound(this, receiver);
+    }
+
+    private Object invoke0(Object receiver) {
+        Overload[] candidates = overloads(0);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates);
+        try {
+            return (Object)overload.handle.invokeExact(receiver);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Object invoke1(Object receiver, Object a) {
+        Overload[] candidates = overloads(1);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates, a);
+        try {
+            return (Object)overload.handle.invokeExact(receiver, a);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Object invoke2(Object receiver, Object a, Object b) {
+        Overload[] candidates = overloads(2);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates, a, b);
+        try {
+            return (Object)overload.handle.invokeExact(receiver, a, b);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Object invoke3(Object receiver, Object a, Object b, Object c) {
+        Overload[] candidates = overloads(3);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates, a, b, c);
+        try {
+            return (Object)overload.handle.invokeExact(receiver, a, b, c);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Object invoke4(Object receiver, Object a, Object b, Object c, Object d) {
+        Overload[] candidates = overloads(4);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates, a, b, c, d);
+        try {
+            return (Object)overload.handle.invokeExact(receiver, a, b, c, d);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Object invoke(Object receiver, List<Object> arguments) {
+        switch (arguments.size()) {
+            case 0: return invoke0(receiver);
+            case 1: return invoke1(receiver, arguments.get(0));
+            case 2: return invoke2(receiver, arguments.get(0), arguments.get(1));
+            case 3: return invoke3(receiver, arguments.get(0), arguments.get(1), arguments.get(2));
+            case 4: return invoke4(receiver, arguments.get(0), arguments.get(1), arguments.get(2),
+                arguments.get(3));
+        }
+
+        Object[] values = arguments.toArray();
+        Overload[] candidates = overloads(values.length);
+        Overload overload = candidates.length == 1 ? candidates[0] : select(candidates, values);
+        try {
+            return (Object)overload.spreader.invokeExact(receiver, values);
+        } catch (Throwable thrown) {
+            throw failure(thrown);
+        }
+    }
+
+    private Overload[] overloads(int count) {
+        if (count < overloads.length && overloads[count].length > 0) return overloads[count];
+
+        List<String> counts = new ArrayList<>();
+        for (int i = 0; i < overloads.length; i++) {
+            if (overloads[i].length > 0) counts.add(Integer.toString(i));
+        }
+        String last = counts.remove(counts.size() - 1);
+        String expected = counts.isEmpty() ? last : String.join(", ", counts) + " or " + last;
+        throw new NativeError("Expect " + expected + " arguments to " + name + " but got " + count + ".");
+    }
+
+    // Only called when there is a choice to make, which is rare, so that the
+    // arguments are only put in an array then
+    private static Overload select(Overload[] candidates, Object... arguments) {
+        for (Overload candidate : candidates) {
+            if (candidate.accepts(arguments)) return candidate;
+        }
+        // None fits, so let the first one raise the error for the argument it can't take
+        return candidates[0];
+    }
+
+    // Errors the script can't have caused, such as running out of memory, are left alone
+    private RuntimeException failure(Throwable thrown) {
+        if (thrown instanceof NativeError || thrown instanceof RuntimeError) {
+            return (RuntimeException)thrown;
+        }
+        if (thrown instanceof Error) throw (Error)thrown;
+
+        String message = thrown.getMessage();
+        return new NativeError(name + " threw " + thrown.getClass().getName() +
+            (message == null ? "." : ": " + message));
+    }
+
+    @Override
+    public String toString() {
+        return "<java method " + name + ">";
+    }
+
+    /**
+     * A method bound to the Java object it was looked up on.
+     */
+    private static final class Bound implements LoxCallable {
+        private final HostMember member;
+        private final Object receiver;
+
+        Bound(HostMember member, Object receiver) {
+            this.member = member;
+            this.receiver = receiver;
+        }
+
+        @Override
+        public int arity() {
+            return member.arity;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return member.invoke(receiver, arguments);
+        }
+
+        @Override
+        public Object call0(Interpreter interpreter) {
+            return member.invoke0(receiver);
+        }
+
+        @Override
+        public Object call1(Interpreter interpreter, Object a) {
+            return member.invoke1(receiver, a);
+        }
+
+        @Override
+        public Object call2(Interpreter interpreter, Object a, Object b) {
+            return member.invoke2(receiver, a, b);
+        }
+
+        @Override
+        public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+            return member.invoke3(receiver, a, b, c);
+        }
+
+        @Override
+        public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+            return member.invoke4(receiver, a, b, c, d);
+        }
+
+        @Override
+        public String toString() {
+            return member.toString();
+        }
+    }
+
+    /**
+     * One Java method or constructor, adapted to take a receiver and Lox
+     * values and to return a Lox value.
+     */
+    private static final class Overload {
+        private final Class<?>[] parameters;
+        // Takes the receiver and the arguments as Objects, and returns an Object
+        final MethodHandle handle;
+        // Takes the receiver and an array of the arguments
+        final MethodHandle spreader;
+        // Lower for the overloads tried first
+        final int rank;
+
+        Overload(Executable executable) {
+            parameters = executable.getParameterTypes();
+
+            MethodHandle target;
+            try {
+                target = executable instanceof Method
+                    ? MethodHandles.publicLookup().unreflect((Method)executable)
+                    : MethodHandles.publicLookup().unreflectConstructor(
+                        (Constructor<?>)executable);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Not accessible: " + executable, e);
+            }
+            // A variable arity method is called with an array, like any other
+            target = target.asFixedArity();
+            if (!(executable instanceof Method) || Modifier.isStatic(executable.getModifiers())) {
+                target = MethodHandles.dropArguments(target, 0, Object.class);
+            }
+
+            MethodHandle[] converters = new MethodHandle[parameters.length];
+            int rank = 0;
+            for (int i = 0; i < parameters.length; i++) {
+                converters[i] = toJava(parameters[i]);
+                rank += rank(parameters[i]);
+            }
+            target = MethodHandles.filterArguments(target, 1, converters);
+
+            handle = fromJava(target).asType(MethodType.genericMethodType(parameters.length + 1));
+            spreader = handle.asSpreader(Object[].class, parameters.length);
+            this.rank = rank;
+        }
+
+        boolean accepts(Object[] arguments) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (!HostMember.accepts(parameters[i], arguments[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    private static int rank(Class<?> type) {
+        if (type == double.class || type == Double.class) return 0;
+        if (type == Object.class) return 2;
+        return 1;
+    }
+
+    // Returns a handle converting a Lox value to the given Java type
+    private static MethodHandle toJava(Class<?> type) {
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        MethodHandle converter;
+        if (primitive == double.class) converter = TO_DOUBLE;
+        else if (primitive == float.class) converter = TO_FLOAT;
+        else if (primitive == long.class) converter = TO_LONG;
+        else if (primitive == int.class) converter = TO_INT;
+        else if (primitive == short.class) converter = TO_SHORT;
+        else if (primitive == byte.class) converter = TO_BYTE;
+        else if (primitive == char.class) converter = TO_CHAR;
+        else if (primitive == boolean.class) converter = TO_BOOLEAN;
+        else converter = MethodHandles.insertArguments(TO_REFERENCE, 0, type);
+
+        // Boxes the primitives taken as their wrappers, and casts the references
+        MethodHandle handle = converter.asType(MethodType.methodType(type, Object.class));
+        if (primitive.isPrimitive() && !type.isPrimitive()) {
+            // The wrappers are references, so they take nil as null
+            handle = MethodHandles.guardWithTest(IS_NIL, MethodHandles.empty(handle.type()), handle);
+        }
+        return handle;
+    }
+
+    // Adapts a handle to return a Lox value, whatever Java type it returns
+    private static MethodHandle fromJava(MethodHandle target) {
+        Class<?> type = target.type().returnType();
+        // void is returned as null by asType(), and boolean is boxed
+        if (type == void.class || type == boolean.class) return target;
+        if (type == char.class) return MethodHandles.filterReturnValue(target, FROM_CHAR);
+        if (type.isPrimitive()) {
+            return MethodHandles.explicitCastArguments(target, target.type().changeReturnType(double.class));
+        }
+        return MethodHandles.filterReturnValue(target,
+            FROM_REFERENCE.asType(MethodType.methodType(Object.class, type)));
+    }
+
+    private static MethodHandle converter(String name, Class<?> returned, Class<?>... parameters) {
+        try {
+            return lookup.findStatic(HostMember.class, name, MethodType.methodType(returned, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns whether a Lox value can be passed as the given Java type,
+     * exactly when the converter for the type would take it.
+     */
+    private static boolean accepts(Class<?> type, Object value) {
+        if (value == null) return !type.isPrimitive();
+
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        if (!primitive.isPrimitive()) {
+            return type.isInstance(HostObject.unwrap(value));
+        }
+        if (primitive == boolean.class) return value instanceof Boolean;
+        if (primitive == char.class) return value instanceof String && ((String)value).length() == 1;
+        if (!(value instanceof Double)) return false;
+
+        double number = (double)value;
+        if (primitive == double.class || primitive == float.class) return true;
+        if (primitive == long.class) return (long)number == number;
+        if (primitive == int.class) return (int)number == number;
+        if (primitive == short.class) return (short)number == number;
+        return (byte)number == number;
+    }
+
+    // The converters the handles are built from
+
+    private static double toDouble(Object value) {
+        if (value instanceof Double) return (double)value;
+        throw mismatch("a number", value);
+    }
+
+    private static float toFloat(Object value) {
+        return (float)toDouble(value);
+    }
+
+    private static long toLong(Object value) {
+        double number = toDouble(value);
+        if ((long)number != number) throw mismatch("a whole number", value);
+        return (long)number;
+    }
+
+    private static int toInt(Object value) {
+        double number = toDouble(value);
+        if ((int)number != number) throw mismatch("a whole number that fits in an int", value);
+        return (int)number;
+    }
+
+    private static short toShort(Object value) {
+        double number = toDouble(value);
+        if ((short)number != number) throw mismatch("a whole number that fits in a short", value);
+        return (short)number;
+    }
+
+    private static byte toByte(Object value) {
+        double number = toDouble(value);
+        if ((byte)number != number) throw mismatch("a whole number that fits in a byte", value);
+        return (byte)number;
+    }
+
+    private static char toChar(Object value) {
+        if (value instanceof String && ((String)value).length() == 1) return ((String)value).charAt(0);
+        throw mismatch("a single character", value);
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) return (boolean)value;
+        throw mismatch("true or false", value);
+    }
+
+    private static boolean isNil(Object value) {
+        return value == null;
+    }
+
+    private static Object toReference(Class<?> type, Object value) {
+        Object unwrapped = HostObject.unwrap(value);
+        if (unwrapped == null || type.isInstance(unwrapped)) return unwrapped;
+        throw mismatch("a " + type.getTypeName(), value);
+    }
+
+    private static String fromChar(char value) {
+        return String.valueOf(value);
+    }
+
+    private static Object fromReference(Object value) {
+        return HostObject.wrap(value);
+    }
+
+    private static NativeError mismatch(String expected, Object value) {
+        return new NativeError("Expect " + expected + " but got " + describe(value) + ".");
+    }
+
+    private static String describe(Object value) {
+        if (value == null) return "nil";
+        if (value instanceof Double) return "the number " + Numbers.toString((double)value);
+        if (value instanceof String) return "a string";
+        if (value instanceof Boolean) return value.toString();
+        if (value instanceof HostObject) return "a " + HostObject.unwrap(value).getClass().getName();
+        if (value instanceof LoxInstance) return "an instance";
+        if (value instanceof LoxCallable) return "a function";
+        return "a " + value.getClass().getSimpleName();
+    }
+
+    /**
+     * Returns the public methods, or public constructors, named by the
+     * given executables in a form every module can call: a method of a
+     * class that isn't public is replaced by the method it implements in a
+     * public supertype, and one that implements none is dropped. Methods
+     * with the same parameters are only kept once.
+     */
+    static List<Executable> accessible(Class<?> owner, List<? extends Executable> executables) {
+        List<Executable> accessible = new ArrayList<>();
+        for (Executable executable : executables) {
+            Executable found = executable instanceof Method
+                ? accessible(owner, (Method)executable)
+                : isAccessible(executable.getDeclaringClass()) ? executable : null;
+            if (found == null) continue;
+
+            boolean duplicate = false;
+            for (Executable other : accessible) {
+                if (Arrays.equals(other.getParameterTypes(), found.getParameterTypes())) duplicate = true;
+            }
+            if (!duplicate) accessible.add(found);
+        }
+        return accessible;
+    }
+
+    private static Method accessible(Class<?> type, Method method) {
+        if (type == null) return null;
+        if (isAccessible(type)) {
+            try {
+                Method found = type.getMethod(method.getName(), method.getParameterTypes());
+                if (isAccessible(found.getDeclaringClass())) return found;
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        // Static methods are only looked up in the class itself
+        if (Modifier.isStatic(method.getModifiers())) return null;
+        for (Class<?> supertype : type.getInterfaces()) {
+            Method found = accessible(supertype, method);
+            if (found != null) return found;
+        }
+        return accessible(type.getSuperclass(), method);
+    }
+
+    private static boolean isAccessible(Class<?> type) {
+        return Modifier.isPublic(type.getModifiers()) &&
+            type.getModule().isExported(type.getPackageName());
+    }
+}
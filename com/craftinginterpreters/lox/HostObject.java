@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A Java object handed to scripts, whose public methods they call like the
+ * methods of any other object: list.add(1), list.size(). The methods are
+ * those of HostClass.of() the object's class.
+ *
+ * Two host objects are equal when the objects they wrap are, as Java's
+ * equals() has it, and one prints as its object's toString().
+ */
+final class HostObject extends NativeObject {
+    final Object target;
+
+    HostObject(Object target) {
+        this.target = target;
+    }
+
+    /**
+     * Returns the Lox value for a Java value: Lox values are kept as they
+     * are, other numbers become doubles, characters become strings, and
+     * any other object is wrapped.
+     */
+    static Object wrap(Object value) {
+        if (value == null || value instanceof Double || value instanceof String ||
+                value instanceof Boolean || value instanceof LoxCallable ||
+                value instanceof LoxInstance || value instanceof NativeObject) {
+            return value;
+        }
+        if (value instanceof Number) return ((Number)value).doubleValue();
+        if (value instanceof Character) return value.toString();
+        return new HostObject(value);
+    }
+
+    /**
+     * Returns the Java object a host object wraps, or the value itself if
+     * it isn't one.
+     */
+    static Object unwrap(Object value) {
+        return value instanceof HostObject ? ((HostObject)value).target : value;
+    }
+
+    @Override
+    LoxCallable method(Token name) {
+        HostMember method = HostClass.of(target.getClass()).method(name.lexeme);
+        return method == null ? null : method.bind(target);
+    }
+
+    /**
+     * Looks up a method for a property access. Each access remembers the
+     * member it found last, and uses it again as long as the objects it
+     * reads are of the same class, as they nearly always are, without
+     * looking up the class or the name again.
+     *
+     * The access is shared by every interpreter running the tree. They may
+     * race to write what it remembers, which is harmless: the member is
+     * immutable, and checked against the class before it is used.
+     */
+    LoxCallable method(Expr.Get access) {
+        Object cached = access.member;
+        if (cached instanceof HostMember && ((HostMember)cached).owner == target.getClass()) {
+            return ((HostMember)cached).bind(target);
+        }
+
+        HostMember method = HostClass.of(target.getClass()).method(access.name.lexeme);
+        if (method == null) return null;
+        access.member = method;
+        return method.bind(target);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HostObject && target.equals(((HostObject)other).target);
+    }
+
+    @Override
+    public int hashCode() {
+        return target.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+}
@@ -0,0 +1,207 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the body of a small function for the Optimizer to put in place of
+ * the calls to it, so that they evaluate it without creating an environment
+ * or throwing a Return.
+ *
+ * Only a function whose whole body returns a single expression can be
+ * inlined, and only if that expression doesn't need the environment of the
+ * call: it may read the parameters, which the copy reads as Arguments of
+ * the call instead, this, if the function is a method, and globals, which
+ * are read by their slot from wherever they are. Reading the variables of
+ * an enclosing function, super, assigning anything but a global, or more
+ * than MAX_NODES nodes keep a function from being inlined.
+ *
+ * The copy is made from the body as the resolver left it, before the
+ * Optimizer fused anything in it, so that every variable it reads is still
+ * a Variable; the Optimizer then optimizes the copy like any other
+ * expression.
+ */
+final class Inliner implements Expr.Visitor<Expr> {
+    // Bodies any larger cost much more than the call they would save
+    static final int MAX_NODES = 24;
+
+    private final Stmt.Function function;
+    private final int first; // the index of the first parameter, after this for a method
+    private int nodes = 0;
+
+    private Inliner(Stmt.Function function, boolean method) {
+        this.function = function;
+        this.first = method ? 1 : 0;
+    }
+
+    /**
+     * Returns the expression a call of the function can evaluate instead of
+     * calling it, or null if the function can't be inlined. The expression
+     * reads the arguments of the call as the Arguments from 0 on, or, for a
+     * method, the instance as Argument 0 and the arguments from 1 on.
+     */
+    static Expr body(Stmt.Function function, boolean method) {
+        if (function.generator || function.body.size() != 1) return null;
+        if (method && function.name.lexeme.equals("init")) return null; // returns this, whatever it returns
+
+        Stmt statement = function.body.get(0);
+        if (!(statement instanceof Stmt.Return) || ((Stmt.Return)statement).value == null) return null;
+
+        return new Inliner(function, method).copy(((Stmt.Return)statement).value);
+    }
+
+    private Expr copy(Expr expr) {
+        if (++nodes > MAX_NODES) return null;
+        return expr.accept(this);
+    }
+
+    private List<Expr> copyAll(List<Expr> expressions) {
+        List<Expr> copies = new ArrayList<>(expressions.size());
+        for (Expr expression : expressions) {
+            Expr copy = copy(expression);
+            if (copy == null) return null;
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth != -1) return null;
+
+        Expr value = copy(expr.value);
+        if (value == null) return null;
+        Expr.Assign copy = new Expr.Assign(expr.name, value);
+        copy.slot = expr.slot;
+        return copy;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = copy(expr.left);
+        Expr right = left == null ? null : copy(expr.right);
+        return right == null ? null : new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = copy(expr.callee);
+        List<Expr> arguments = callee == null ? null : copyAll(expr.arguments);
+        return arguments == null ? null : new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = copy(expr.object);
+        return object == null ? null : new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = copy(expr.expression);
+        return expression == null ? null : new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = copy(expr.left);
+        Expr right = left == null ? null : copy(expr.right);
+        return right == null ? null : new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = copy(expr.object);
+        Expr value = object == null ? null : copy(expr.value);
+        return value == null ? null : new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        // In a method, this is in the environment just outside the one of the call
+        if (first == 0 || expr.depth != 1) return null;
+        return new Expr.Argument(expr.keyword, 0);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = copy(expr.right);
+        return right == null ? null : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth == -1) return expr;
+        if (expr.depth != 0) return null; // a variable of an enclosing function
+
+        List<Token> params = function.params;
+        for (int i = 0; i < params.size(); i++) {
+            if (params.get(i).lexeme.equals(expr.name.lexeme)) {
+                return new Expr.Argument(expr.name, first + i);
+            }
+        }
+        return null;
+    }
+
+    // The resolver never leaves any of these in a body
+
+    @Override
+    public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitCompareVariablesExpr(Expr.CompareVariables expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitIsNilExpr(Expr.IsNil expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitUpdateFieldExpr(Expr.UpdateField expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Expr.Invoke expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitInlineExpr(Expr.Inline expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitArgumentExpr(Expr.Argument expr) {
+        return null;
+    }
+
+    @Override
+    public Expr visitNumberBinaryExpr(Expr.NumberBinary expr) {
+        return null;
+    }
+}
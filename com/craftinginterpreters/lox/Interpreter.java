@@ -1,30 +1,229 @@
 package com.craftinginterpreters.lox;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Runs resolved syntax trees. An interpreter holds all the mutable state of
+ * one execution (its globals, the current environment and where to report
+ * errors), so it must only be used by one thread at a time.
+ *
+ * Several interpreters, each on its own thread, can run the same statements
+ * in parallel, as long as the statements were handed over after the
+ * Resolver and the Optimizer through something that orders memory, such as
+ * starting the thread or submitting the work to an executor. From then on
+ * the structure of a tree never changes, and the only fields interpreters
+ * write on its nodes are caches and deoptimization flags:
+ *
+ * <pre>
+ * Call.checked          the callee whose arity was last checked, see callable()
+ * Get.member            the Java method last found, see HostObject.method()
+ * Invoke.dispatch       the method last found, with the class it was found for
+ * SuperInvoke.dispatch
+ * Invoke.body           dropped once a call doesn't call the method it copies
+ * Inline.deoptimized    set once a call doesn't call the function it copies
+ * </pre>
+ *
+ * Threads race to write these without synchronization, which is harmless:
+ * what they write is immutable, or a flag that only ever goes one way, and
+ * each cache is checked against what it is used for before it is used. A
+ * thread may miss what another wrote and look a method up again, or run a
+ * copied body once more after another gave up on it, but the body is still
+ * guarded. Each field is read once into a local before being used.
+ */
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    final GlobalEnvironment globals;
+    private Environment environment;
+    private final ErrorReporter reporter;
+    PrintWriter out = new PrintWriter(System.out, true); // where print statements write
+    private final char[] printed = new char[Numbers.MAX_LENGTH + LINE_SEPARATOR.length()]; // a printed number's line
+    private EventLoop eventLoop; // created when the script first schedules a callback
+    private Object[] frame; // the arguments of the innermost inlined call, see inline()
+    // The parenthesis of the call last made, for natives that call back later, see callBack()
+    Token lastCall = new Token(TokenType.EOF, "", null, 0);
+
+    // What a script has done so far, for the budgeted interpreter to check against its budget
+    long statements = 0;   // counted a block at a time, as the block is entered
+    long environments = 0; // one for every block and call, counted with its statements
+    int depth = 0;         // Lox function calls running
+    // The budgeted interpreter is asked to check its budget once statements pass this or depth passes maxDepth
+    long nextCheck = Long.MAX_VALUE;
+    int maxDepth = Integer.MAX_VALUE;
+
+    Interpreter(ErrorReporter reporter) {
+        this(reporter, new GlobalEnvironment.Slots());
+    }
 
-    Interpreter() {
+    /**
+     * Creates an interpreter whose globals take their slots from the given
+     * table, shared with the resolver of the code it runs.
+     */
+    Interpreter(ErrorReporter reporter, GlobalEnvironment.Slots slots) {
+        this(reporter, new GlobalEnvironment(slots));
         globals.define("clock", new LoxCallable() {
             @Override
             public int arity() { return 0; }
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
+                return interpreter.number((double)System.currentTimeMillis() / 1000.0);
             }
 
             @Override
             public String toString() { return "<native fn>"; }
         });
+        Parallel.define(globals);
+        Tasks.define(globals);
+        EventLoop.define(globals);
+    }
+
+    /**
+     * Creates an interpreter whose globals are a copy-on-write fork of
+     * another's, so it starts with everything the other has defined without
+     * re-running the code that defined it. See GlobalEnvironment.fork().
+     *
+     * @param parent The interpreter to fork. It must not be running.
+     * @param reporter Where this interpreter reports runtime errors.
+     */
+    Interpreter(Interpreter parent, ErrorReporter reporter) {
+        this(reporter, parent.globals.fork());
+        this.out = parent.out;
+    }
+
+    /**
+     * Creates an interpreter for running part of this one's work on another
+     * thread. It gets a fork of the globals, so that it can read them while
+     * this interpreter keeps going.
+     */
+    Interpreter worker() {
+        return new Interpreter(this, reporter);
+    }
+
+    /**
+     * Returns the event loop of this interpreter, creating it if need be.
+     */
+    EventLoop eventLoop() {
+        if (eventLoop == null) eventLoop = new EventLoop(this);
+        return eventLoop;
+    }
+
+    /**
+     * Runs the callbacks scheduled so far, and those they schedule, to
+     * completion. Called once the statements of a script have run.
+     */
+    void runEventLoop() {
+        if (eventLoop != null) eventLoop.run();
+    }
+
+    private Interpreter(ErrorReporter reporter, GlobalEnvironment globals) {
+        this.reporter = reporter;
+        this.globals = globals;
+        this.environment = globals;
+    }
+
+    /**
+     * The kinds of runtime objects the interpreter allocates on behalf of a
+     * script. A bound method stands for both the method and the environment
+     * holding its "this".
+     */
+    enum Allocation {
+        ENVIRONMENT,
+        BOUND_METHOD,
+        INSTANCE,
+        NUMBER,
+        STRING
+    }
+
+    /**
+     * Called whenever a runtime object is allocated on behalf of the script,
+     * except the environments of blocks and calls, which executeBlock()
+     * counts instead. It does nothing here; the allocation profiler
+     * overrides it to attribute the allocation to the line and function
+     * that caused it.
+     *
+     * @param kind The kind of object allocated.
+     */
+    void allocated(Allocation kind) {}
+
+    /**
+     * Whether allocated() is told about boxed numbers, which nearly every
+     * arithmetic operation allocates. Only the allocation profiler wants
+     * them; the budgeted interpreter doesn't count them, and being called
+     * for each one cost it more than checking its budgets.
+     */
+    boolean reportsNumbers = false;
+
+    /**
+     * Called whenever an object holding the given number of characters, such
+     * as a concatenated string, is allocated on behalf of the script. It
+     * reports the object through allocated(kind); the budgeted interpreter
+     * also charges it for the characters.
+     *
+     * @param kind The kind of object allocated.
+     * @param length The number of characters it holds.
+     */
+    void allocated(Allocation kind, int length) {
+        allocated(kind);
+    }
+
+    /**
+     * Called at the end of every iteration of a loop, which counts as a
+     * statement, so that even a loop whose body isn't a block adds up.
+     *
+     * @param loop The loop that is about to test its condition again.
+     */
+    void backEdge(Stmt.While loop) {
+        if (++statements > nextCheck) checkBudget(loop.keyword);
+    }
+
+    /**
+     * Called as a Lox function starts running, and balanced by exit() once
+     * it is done, however it ends.
+     *
+     * @param function The name of the function, for errors.
+     */
+    void enter(Token function) {
+        if (++depth > maxDepth || statements > nextCheck) checkBudget(function);
+    }
+
+    void exit() {
+        depth--;
     }
 
+    /**
+     * Called at a loop back-edge or call once the counters pass nextCheck or
+     * maxDepth, which they never do here. The budgeted interpreter
+     * overrides it to check its budget and set when to be called next.
+     * Counting in fields both share, rather than in hooks only the budgeted
+     * interpreter overrides, is what keeps a budget nearly free: the plain
+     * interpreter runs the very same code.
+     *
+     * @param where Where the script is, for errors.
+     */
+    void checkBudget(Token where) {
+        nextCheck = Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns how long the event loop may still wait for timers and async
+     * operations, in nanoseconds. There is no limit here; the budgeted
+     * interpreter returns what is left of its time budget.
+     */
+    long timeLeft() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called by the event loop when timeLeft() has run out while it waits.
+     * The budgeted interpreter overrides it to stop the script.
+     */
+    void timeRanOut() {}
+
     /**
      * Interprets a list of statements by executing each statement
      * sequentially. If a runtime error occurs during the execution
@@ -38,13 +237,91 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             for (Stmt statement : statements) {
                 execute(statement);
             }
+            runEventLoop();
         }
         catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            reporter.runtimeError(error);
+        }
+    }
+
+    /**
+     * Executes a list of statements like interpret(), but lets runtime errors
+     * propagate to the caller. If the last statement is an expression
+     * statement its value is returned, which is how embedders get a result
+     * out of a script.
+     *
+     * @param statements The list of statements to be executed.
+     * @return The value of the trailing expression statement, or null.
+     */
+    Object run(List<Stmt> statements) {
+        this.statements += statements.size();
+
+        int last = statements.size() - 1;
+        for (int i = 0; i < last; i++) {
+            execute(statements.get(i));
+        }
+
+        Object value = null;
+        if (last < 0) {
+            // Nothing to run
+        } else if (statements.get(last) instanceof Stmt.Expression) {
+            value = evaluate(((Stmt.Expression)statements.get(last)).expression);
+        } else {
+            execute(statements.get(last));
+        }
+
+        runEventLoop();
+        return value;
+    }
+
+    /**
+     * Calls a Lox function or class on behalf of the host rather than from a
+     * script, letting runtime errors propagate to the caller.
+     *
+     * @param callee The function or class to call.
+     * @param arguments Its arguments, already checked against its arity.
+     * @return What the call returned.
+     */
+    Object callFromHost(LoxCallable callee, List<Object> arguments) {
+        return callee.call(this, arguments);
+    }
+
+    /**
+     * Calls a function a native was handed, such as a callback the event
+     * loop runs, on behalf of that native. Errors raised by natives are
+     * reported at where, like those of calls made by the script, rather than
+     * escaping the interpreter.
+     *
+     * @param where Where the native was called, or the method it was
+     *              called through.
+     * @param function The function to call back, already checked against
+     *                 its arity.
+     * @return What the call returned.
+     */
+    Object callBack(Token where, LoxCallable function) {
+        try {
+            return function.call0(this);
+        } catch (NativeError error) {
+            throw new RuntimeError(where, error.getMessage());
+        }
+    }
+
+    Object callBack(Token where, LoxCallable function, Object a) {
+        try {
+            return function.call1(this, a);
+        } catch (NativeError error) {
+            throw new RuntimeError(where, error.getMessage());
+        }
+    }
+
+    Object callBack(Token where, LoxCallable function, Object a, Object b) {
+        try {
+            return function.call2(this, a, b);
+        } catch (NativeError error) {
+            throw new RuntimeError(where, error.getMessage());
         }
     }
 
-    
     /**
      * Evaluates a literal expression and returns its value.
      *
@@ -115,7 +392,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
      */
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
+        int distance = expr.depth;
         LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
 
         LoxInstance object = (LoxInstance)environment.getAt(distance - 1, "this");
@@ -126,6 +403,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "''.");
         }
 
+        allocated(Allocation.BOUND_METHOD);
         return method.bind(object);
     }
 
@@ -139,7 +417,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
      */
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth);
     }
 
     /**
@@ -154,7 +432,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return !isTruthy(right);
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -(double)right;
+                return number(-(double)right);
         }
 
         // Unreachable
@@ -163,27 +441,28 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     /**
      * Visits a variable expression, retrieving the value of the variable
-     * by looking up its name in the current environment or global scope.
+     * by looking up its name in the current environment, or its slot in
+     * the globals.
      *
      * @param expr The variable expression to visit.
      * @return The value of the variable.
      */
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        if (expr.depth == -1) return globals.get(expr.slot, expr.name);
+        return environment.getAt(expr.depth, expr.name.lexeme);
     }
 
     /**
      * Looks up the value of a variable by traversing the scope chain.
      *
      * @param name The token for the variable name.
-     * @param expr The expression where the variable is used.
+     * @param depth The distance to the declaring scope set by the resolver, or -1 for a global.
      * @return The value of the variable.
      */
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookUpVariable(Token name, int depth) {
+        if (depth != -1) {
+            return environment.getAt(depth, name.lexeme);
         } else {
             return globals.get(name);
         }
@@ -204,11 +483,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
+    /**
+     * Boxes the result of an arithmetic operation, counting it when metrics
+     * are on and reporting it as an allocation if asked to.
+     */
+    private Object number(double value) {
+        if (Metrics.ENABLED) Metrics.boxedDoubles.increment();
+        if (reportsNumbers) allocated(Allocation.NUMBER);
+        return value;
+    }
+
     /**
      * Returns the logical value of an expression.
      * The only falsey values are nil and false.
      */
-    private boolean isTruthy(Object object) {
+    boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
@@ -231,12 +520,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private String stringify(Object object) {
         if (object == null) return "nil";
 
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0"))
-                text = text.substring(0, text.length() - 2);
-            return text;
-        }
+        if (object instanceof Double) return Numbers.toString((double)object);
 
         return object.toString();
     }
@@ -251,30 +535,64 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     /**
      * Sends an expression back to the interpreter recursively.
+     * Package-private so that instrumented subclasses can hook every evaluation.
      */
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
     /**
-     * Executes a statement. This is the entry-point for the entire interpreter.
+     * Executes a single statement in the given environment. Generators run
+     * their bodies through this one statement at a time.
+     *
+     * @param stmt The statement to execute.
+     * @param environment The environment to execute it in.
      */
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    void executeIn(Stmt stmt, Environment environment) {
+        statements++;
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            execute(stmt);
+        } finally {
+            this.environment = previous;
+        }
     }
 
     /**
-     * Associates an expression with a depth, which is how many scopes to
-     * traverse to resolve the expression.
+     * Evaluates an expression in the given environment, for generators.
      *
-     * @param expr The expression to associate with a depth.
-     * @param depth The depth of the expression.
+     * @param expr The expression to evaluate.
+     * @param environment The environment to evaluate it in.
+     * @return The value of the expression.
      */
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    Object evaluateIn(Expr expr, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            return evaluate(expr);
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    /**
+     * Executes a statement. This is the entry-point for the entire interpreter.
+     * Package-private so that instrumented subclasses can hook every execution.
+     */
+    void execute(Stmt stmt) {
+        if (Metrics.ENABLED) Metrics.statements.increment();
+        stmt.accept(this);
     }
 
+    /**
+     * Executes statements in a new environment, that of a block or a call.
+     * The statements are counted as the block is entered, all at once, so a
+     * block left early by a return or an error counts in full.
+     */
     void executeBlock(List<Stmt> statements, Environment environment) {
+        this.statements += statements.size();
+        environments++;
         Environment previous = this.environment;
 
         try {
@@ -324,6 +642,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         environment.define(stmt.name.lexeme, null);
 
         if (stmt.superclass != null) {
+            allocated(Allocation.ENVIRONMENT);
             environment = new Environment(environment);
             environment.define("super", superclass);
         }
@@ -379,7 +698,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        if (value instanceof Double) {
+            // Written in one go with its line separator, as println would, but without making a string
+            int end = Numbers.write((double)value, printed, 0);
+            LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), printed, end);
+            out.write(printed, 0, end + LINE_SEPARATOR.length());
+            out.flush();
+        } else {
+            out.println(stringify(value));
+        }
         return null;
     }
 
@@ -391,6 +718,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new Return(value);
     }
 
+    /**
+     * Yields are run by the Generator executing the function they are in,
+     * and the resolver rejects them anywhere else, so this is never reached.
+     */
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        throw new RuntimeError(stmt.keyword, "Can only yield from a generator.");
+    }
+
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
         Object value = null;
@@ -406,6 +742,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Void visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
             execute(stmt.body);
+            backEdge(stmt);
         }
         
         return null;
@@ -422,11 +759,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth != -1) {
+            environment.assignAt(expr.depth, expr.name, value);
         } else {
-            globals.assign(expr.name, value);
+            globals.assign(expr.slot, expr.name, value);
         }
 
         return value;
@@ -435,42 +771,51 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        return binary(expr.operator, left, right);
+    }
 
-        switch (expr.operator.type) {
+    /**
+     * Applies a binary operator to operands that have already been evaluated.
+     */
+    private Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
             // Equality operators
             case BANG_EQUAL: return !isEqual(left, right);
             case EQUAL_EQUAL: return isEqual(left, right);
 
             // Comparison operators
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left > (double)right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left >= (double)right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left < (double)right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left <= (double)right;
 
             // Arithmetic operators
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left - (double)right;
+                checkNumberOperands(operator, left, right);
+                return number((double)left - (double)right);
             case PLUS:
                 if (left instanceof Double && right instanceof Double)
-                    return (double)left + (double)right;
-                if (left instanceof String && right instanceof String) 
-                    return (String)left + (String)right;
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                    return number((double)left + (double)right);
+                if (left instanceof String && right instanceof String) {
+                    String concatenated = (String)left + (String)right;
+                    allocated(Allocation.STRING, concatenated.length());
+                    return concatenated;
+                }
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
+                checkNumberOperands(operator, left, right);
+                return number((double)left / (double)right);
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
+                checkNumberOperands(operator, left, right);
+                return number((double)left * (double)right);
         }
 
         // Unreachable
@@ -488,26 +833,129 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
      */
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        return call(expr, evaluate(expr.callee));
+    }
+
+    /**
+     * Evaluates the arguments of a call and calls the callee, already
+     * evaluated, with them.
+     */
+    private Object call(Expr.Call expr, Object callee) {
+        List<Expr> arguments = expr.arguments;
+
+        // Calls with up to four arguments pass them one by one rather than in a list
+        Object a, b, c, d;
+        switch (arguments.size()) {
+            case 0:
+                return call0(expr, callable(expr, callee));
+            case 1:
+                a = evaluate(arguments.get(0));
+                return call1(expr, callable(expr, callee), a);
+            case 2:
+                a = evaluate(arguments.get(0));
+                b = evaluate(arguments.get(1));
+                return call2(expr, callable(expr, callee), a, b);
+            case 3:
+                a = evaluate(arguments.get(0));
+                b = evaluate(arguments.get(1));
+                c = evaluate(arguments.get(2));
+                return call3(expr, callable(expr, callee), a, b, c);
+            case 4:
+                a = evaluate(arguments.get(0));
+                b = evaluate(arguments.get(1));
+                c = evaluate(arguments.get(2));
+                d = evaluate(arguments.get(3));
+                return call4(expr, callable(expr, callee), a, b, c, d);
+        }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        List<Object> values = new ArrayList<>(arguments.size());
+        for (Expr argument : arguments) {
+            values.add(evaluate(argument));
         }
 
+        LoxCallable function = callable(expr, callee);
+        try {
+            return function.call(this, values);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    /**
+     * Checks that the value called is callable and takes as many arguments
+     * as the call passes. A call remembers the last function or class that
+     * passed the check, so that calling the same one again, as calls nearly
+     * always do, doesn't ask for its arity again. Every closure of the same
+     * function declaration counts as the same function, since they all take
+     * the same parameters.
+     *
+     * The call is shared by every interpreter running the tree, and they may
+     * race to write what it remembers. That is harmless: whatever one of
+     * them reads was checked against this very call, and is only compared,
+     * never used.
+     */
+    private LoxCallable callable(Expr.Call expr, Object callee) {
         if (!(callee instanceof LoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         LoxCallable function = (LoxCallable)callee;
+        Object checked = function instanceof LoxFunction ? ((LoxFunction)function).declaration : function;
+        if (expr.checked != checked) {
+            // Java methods with overloads of several arities check the number themselves
+            if (function.arity() >= 0 && expr.arguments.size() != function.arity()) {
+                throw new RuntimeError(expr.paren, "Expect " +
+                    function.arity() + " arguments but got " +
+                    expr.arguments.size());
+            }
+            expr.checked = checked;
+        }
+
+        if (Metrics.ENABLED) Metrics.calls.increment();
+        lastCall = expr.paren;
+        return function;
+    }
 
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expect " + 
-                function.arity() + " arguments but got " +
-                arguments.size());
+    // Errors raised by natives are reported at the call, like every other runtime error
+
+    private Object call0(Expr.Call expr, LoxCallable function) {
+        try {
+            return function.call0(this);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
         }
+    }
 
-        return function.call(this, arguments);
+    private Object call1(Expr.Call expr, LoxCallable function, Object a) {
+        try {
+            return function.call1(this, a);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object call2(Expr.Call expr, LoxCallable function, Object a, Object b) {
+        try {
+            return function.call2(this, a, b);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object call3(Expr.Call expr, LoxCallable function, Object a, Object b, Object c) {
+        try {
+            return function.call3(this, a, b, c);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object call4(Expr.Call expr, LoxCallable function, Object a, Object b, Object c, Object d) {
+        try {
+            return function.call4(this, a, b, c, d);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
     }
 
     /**
@@ -522,9 +970,302 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance) {
-            return ((LoxInstance) object).get(expr.name);
+            return ((LoxInstance) object).get(this, expr.name);
+        }
+        return property(expr, object);
+    }
+
+    /**
+     * Gets a property of an object that has already been evaluated.
+     */
+    private Object property(Expr.Get expr, Object object) {
+        if (object instanceof LoxInstance) {
+            return ((LoxInstance) object).get(this, expr.name);
+        }
+
+        if (object instanceof HostObject) {
+            LoxCallable method = ((HostObject) object).method(expr);
+            if (method != null) return method;
+            throw new RuntimeError(expr.name, "Undefined property '" + expr.name.lexeme + "'.");
+        }
+
+        if (object instanceof NativeObject) {
+            LoxCallable method = ((NativeObject) object).method(expr.name);
+            if (method != null) return method;
+            throw new RuntimeError(expr.name, "Undefined property '" + expr.name.lexeme + "'.");
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
     }
+
+    // Superinstructions, created by the Optimizer in place of the subtrees
+    // they are named after. Each reads its variables directly rather than
+    // visiting them, and only falls back to binary() to raise its errors.
+
+    @Override
+    public Object visitCompareConstantExpr(Expr.CompareConstant expr) {
+        Object left = visitVariableExpr(expr.left);
+        if (left instanceof Double) return compare(expr.operator, (double)left, expr.right);
+        return binary(expr.operator, left, expr.right);
+    }
+
+    @Override
+    public Object visitCompareVariablesExpr(Expr.CompareVariables expr) {
+        Object left = visitVariableExpr(expr.left);
+        Object right = visitVariableExpr(expr.right);
+        if (left instanceof Double && right instanceof Double) {
+            return compare(expr.operator, (double)left, (double)right);
+        }
+        return binary(expr.operator, left, right);
+    }
+
+    private static boolean compare(Token operator, double left, double right) {
+        switch (operator.type) {
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            default: return left <= right;
+        }
+    }
+
+    @Override
+    public Object visitIncrementExpr(Expr.Increment expr) {
+        Expr.Variable variable = expr.variable;
+        if (variable.depth != -1) {
+            Object result = increment(expr, environment.getAt(variable.depth, variable.name.lexeme));
+            environment.assignAt(variable.depth, variable.name, result);
+            return result;
+        }
+
+        Object result = increment(expr, globals.get(variable.slot, variable.name));
+        globals.assign(variable.slot, variable.name, result);
+        return result;
+    }
+
+    private Object increment(Expr.Increment expr, Object value) {
+        if (!(value instanceof Double)) return binary(expr.operator, value, expr.delta);
+
+        return number(expr.operator.type == TokenType.PLUS
+            ? (double)value + expr.delta
+            : (double)value - expr.delta);
+    }
+
+    @Override
+    public Object visitIsNilExpr(Expr.IsNil expr) {
+        return (evaluate(expr.operand) == null) != expr.negated;
+    }
+
+    @Override
+    public Object visitUpdateFieldExpr(Expr.UpdateField expr) {
+        Object object = evaluate(expr.field.object);
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(expr.name, "Only instances have fields.");
+        }
+
+        LoxInstance instance = (LoxInstance)object;
+        Object left = instance.get(this, expr.field.name);
+        Object value = binary(expr.operator, left, evaluate(expr.value));
+        instance.set(expr.name, value);
+        return value;
+    }
+
+    /**
+     * Applies an operator to operands TypeInference proved to be numbers,
+     * so without checking them, and without boxing the results of the
+     * operators nested in them.
+     */
+    @Override
+    public Object visitNumberBinaryExpr(Expr.NumberBinary expr) {
+        switch (expr.operator.type) {
+            case GREATER: return numeric(expr.left) > numeric(expr.right);
+            case GREATER_EQUAL: return numeric(expr.left) >= numeric(expr.right);
+            case LESS: return numeric(expr.left) < numeric(expr.right);
+            case LESS_EQUAL: return numeric(expr.left) <= numeric(expr.right);
+            default: return number(arithmetic(expr));
+        }
+    }
+
+    private double arithmetic(Expr.NumberBinary expr) {
+        double left = numeric(expr.left);
+        double right = numeric(expr.right);
+        switch (expr.operator.type) {
+            case MINUS: return left - right;
+            case PLUS: return left + right;
+            case SLASH: return left / right;
+            default: return left * right;
+        }
+    }
+
+    /**
+     * Evaluates an operand of a NumberBinary, which is always a number. One
+     * that is itself a NumberBinary can only be arithmetic, as comparisons
+     * give booleans, and is computed without boxing its result.
+     */
+    double numeric(Expr expr) {
+        while (expr instanceof Expr.Grouping) {
+            expr = ((Expr.Grouping)expr).expression;
+        }
+        if (expr instanceof Expr.NumberBinary) return arithmetic((Expr.NumberBinary)expr);
+
+        return (double)evaluate(expr);
+    }
+
+    /**
+     * Calls a method of an object, as evaluating the property and then
+     * calling it would, but without looking the method up by name on every
+     * call.
+     *
+     * Each call remembers the last method it found and the class it found
+     * it in. A call marked with its target by the Optimizer, the one
+     * declaration of the method in the program, calls it on instances of
+     * that class and of all its subclasses, since none of them can
+     * override it. Any other call only calls it on instances of that very
+     * class. Calls on other classes look the method up again, so a class
+     * declared again, or a name bound to another class, only costs one
+     * lookup. A call marked fieldless doesn't look for a field first, and
+     * one the Optimizer copied the body of its target into evaluates that
+     * body instead of calling the target, as visitInlineExpr() does.
+     *
+     * The call is shared by every interpreter running the tree, and they may
+     * race to write what it remembers; that is harmless, since it is one
+     * immutable object.
+     */
+    @Override
+    public Object visitInvokeExpr(Expr.Invoke expr) {
+        Object object = evaluate(expr.method.object);
+        if (!(object instanceof LoxInstance)) return call(expr.call, property(expr.method, object));
+
+        LoxInstance instance = (LoxInstance)object;
+        if (!expr.fieldless) {
+            Object field = instance.field(expr.method.name.lexeme);
+            if (field != LoxInstance.ABSENT) return call(expr.call, field);
+        }
+        if (Metrics.ENABLED) Metrics.propertyLookups.increment();
+
+        LoxClass klass = instance.klass;
+        Object cached = expr.dispatch;
+        LoxFunction method = cached instanceof Dispatch && (((Dispatch)cached).klass == klass ||
+                expr.target != null && klass.inherits(((Dispatch)cached).klass))
+            ? ((Dispatch)cached).method
+            : dispatch(expr, klass);
+
+        // Read once: another thread running the same call may drop the body at any time
+        Expr body = expr.body;
+        if (body != null) {
+            if (method.declaration.name == expr.target.name) {
+                return inline(body, expr.call.arguments, instance);
+            }
+            expr.body = null;
+        }
+
+        allocated(Allocation.BOUND_METHOD);
+        return call(expr.call, method.bind(instance));
+    }
+
+    // Looks up the method a call hasn't found on this class yet, and remembers it
+    private LoxFunction dispatch(Expr.Invoke expr, LoxClass klass) {
+        String name = expr.method.name.lexeme;
+        LoxClass declaring = klass.declaring(name);
+        if (declaring == null) {
+            throw new RuntimeError(expr.method.name, "Undefined property '" + name + "'.");
+        }
+
+        LoxFunction method = declaring.findMethod(name);
+        expr.dispatch = new Dispatch(expr.target != null ? declaring : klass, method);
+        return method;
+    }
+
+    /**
+     * Calls a method of the superclass, as evaluating super.method and then
+     * calling it would, without looking the method up every time. Each call
+     * remembers the method it found in the last superclass it looked in,
+     * which is the same every time unless the class statement ran again.
+     */
+    @Override
+    public Object visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+        int distance = expr.method.depth;
+        LoxClass superclass = (LoxClass)environment.getAt(distance, "super");
+        LoxInstance object = (LoxInstance)environment.getAt(distance - 1, "this");
+
+        LoxFunction method;
+        Object cached = expr.dispatch;
+        if (cached instanceof Dispatch && ((Dispatch)cached).klass == superclass) {
+            method = ((Dispatch)cached).method;
+        } else {
+            method = superclass.findMethod(expr.method.method.lexeme);
+            if (method == null) {
+                throw new RuntimeError(expr.method.method, "Undefined property '" + expr.method.method.lexeme + "''.");
+            }
+            expr.dispatch = new Dispatch(superclass, method);
+        }
+
+        allocated(Allocation.BOUND_METHOD);
+        return call(expr.call, method.bind(object));
+    }
+
+    /**
+     * Calls a function the Optimizer copied the body of into the call, by
+     * evaluating the copy, as long as the callee is still that function.
+     * Functions are told apart by the name token of their declaration,
+     * which the Optimizer keeps when it rebuilds one, and any closure of
+     * the declaration will do, since the copy reads none of its variables.
+     *
+     * A call that finds anything else to call is deoptimized: it calls its
+     * callee from then on, like any other call. Like the other caches, the
+     * flag is shared by every interpreter running the tree; they may race
+     * to set it, which only costs the others the copy.
+     *
+     * An inlined call creates no environment and throws no Return, and is
+     * not reported to Flight Recorder as a lox.FunctionCall event.
+     */
+    @Override
+    public Object visitInlineExpr(Expr.Inline expr) {
+        Object callee = evaluate(expr.call.callee);
+        if (!expr.deoptimized) {
+            if (callee instanceof LoxFunction &&
+                    ((LoxFunction)callee).declaration.name == expr.function.name) {
+                return inline(expr.body, expr.call.arguments, null);
+            }
+            expr.deoptimized = true;
+        }
+
+        return call(expr.call, callee);
+    }
+
+    @Override
+    public Object visitArgumentExpr(Expr.Argument expr) {
+        return frame[expr.index];
+    }
+
+    // Evaluates the arguments of an inlined call, after the instance for a method, and then the body reading them
+    private Object inline(Expr body, List<Expr> arguments, LoxInstance instance) {
+        int first = instance == null ? 0 : 1;
+        Object[] values = new Object[first + arguments.size()];
+        if (instance != null) values[0] = instance;
+        for (int i = 0; i < arguments.size(); i++) {
+            values[first + i] = evaluate(arguments.get(i));
+        }
+        if (Metrics.ENABLED) Metrics.calls.increment();
+
+        Object[] enclosing = frame;
+        frame = values;
+        try {
+            return evaluate(body);
+        } finally {
+            frame = enclosing;
+        }
+    }
+
+    /**
+     * A method found by a method call, and the class it is valid for.
+     */
+    private static final class Dispatch {
+        final LoxClass klass;
+        final LoxFunction method;
+
+        Dispatch(LoxClass klass, LoxFunction method) {
+            this.klass = klass;
+            this.method = method;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * An immutable snapshot of the interpreter's cumulative counters. All of
+ * them stay at zero unless the JVM runs with -Dlox.metrics=true.
+ */
+public final class InterpreterStats {
+    private final long environmentsAllocated;
+    private final long callsMade;
+    private final long instancesCreated;
+    private final long propertyLookups;
+    private final long methodLookupSteps;
+    private final long boxedDoubles;
+    private final long statementsExecuted;
+
+    InterpreterStats(long environmentsAllocated, long callsMade, long instancesCreated,
+                     long propertyLookups, long methodLookupSteps, long boxedDoubles,
+                     long statementsExecuted) {
+        this.environmentsAllocated = environmentsAllocated;
+        this.callsMade = callsMade;
+        this.instancesCreated = instancesCreated;
+        this.propertyLookups = propertyLookups;
+        this.methodLookupSteps = methodLookupSteps;
+        this.boxedDoubles = boxedDoubles;
+        this.statementsExecuted = statementsExecuted;
+    }
+
+    /**
+     * Returns the value of every counter at this point in time.
+     *
+     * @return a snapshot of the counters
+     */
+    public static InterpreterStats snapshot() {
+        return Metrics.snapshot();
+    }
+
+    public long environmentsAllocated() { return environmentsAllocated; }
+
+    public long callsMade() { return callsMade; }
+
+    public long instancesCreated() { return instancesCreated; }
+
+    /** Number of property accesses on instances, both fields and methods. */
+    public long propertyLookups() { return propertyLookups; }
+
+    /** Number of classes visited while looking methods up the superclass chain. */
+    public long methodLookupSteps() { return methodLookupSteps; }
+
+    /** Number of arithmetic results boxed into a new Double. */
+    public long boxedDoubles() { return boxedDoubles; }
+
+    public long statementsExecuted() { return statementsExecuted; }
+
+    @Override
+    public String toString() {
+        return "environments allocated: " + environmentsAllocated + "\n" +
+               "calls made:             " + callsMade + "\n" +
+               "instances created:      " + instancesCreated + "\n" +
+               "property lookups:       " + propertyLookups + "\n" +
+               "method lookup steps:    " + methodLookupSteps + "\n" +
+               "boxed doubles:          " + boxedDoubles + "\n" +
+               "statements executed:    " + statementsExecuted;
+    }
+}
@@ -0,0 +1,16 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The JMX view of the interpreter's cumulative counters, registered as
+ * "com.craftinginterpreters.lox:type=Interpreter" when the JVM runs with
+ * -Dlox.metrics=true.
+ */
+public interface InterpreterStatsMXBean {
+    long getEnvironmentsAllocated();
+    long getCallsMade();
+    long getInstancesCreated();
+    long getPropertyLookups();
+    long getMethodLookupSteps();
+    long getBoxedDoubles();
+    long getStatementsExecuted();
+}
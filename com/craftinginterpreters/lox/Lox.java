@@ -9,20 +9,41 @@ import java.nio.file.Paths;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter(); // static so as to reuse the same interpreter for successive calls to run()
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static final ErrorReporter reporter = new ErrorReporter();
+    private static Interpreter interpreter; // static so as to reuse the same interpreter for successive calls to run()
+    private static ProfilingInterpreter profiler = null; // only set when running with --profile or --alloc-profile
+    private static AllocationProfiler allocationProfiler = null; // only set when running with --alloc-profile
+    private static boolean profile = false;
+    private static Timings timings = null; // only set when running with --timings
 
     public static void main(String[] args) {
+        // Leading options
+        int first = 0;
+        boolean allocationProfile = false;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--profile")) profile = true;
+            else if (args[first].equals("--alloc-profile")) allocationProfile = true;
+            else if (args[first].equals("--timings")) timings = new Timings();
+            else usage();
+            first++;
+        }
+
+        if (allocationProfile) {
+            interpreter = profiler = allocationProfiler = new AllocationProfiler(reporter);
+        } else if (profile) {
+            interpreter = profiler = new ProfilingInterpreter(reporter);
+        } else {
+            interpreter = new Interpreter(reporter);
+        }
+
         // Multiple arguments - bad usage
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
+        if (args.length - first > 1) {
+            usage();
         }
         // Single argument - run a specified file
-        else if (args.length == 1) {
+        else if (args.length - first == 1) {
             try {
-                runFile(args[0]);
+                runFile(args[first]);
             } 
             catch (Exception e) { }
         }
@@ -35,13 +56,23 @@ public class Lox {
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--profile] [--alloc-profile] [--timings] [script]");
+        System.exit(64);
+    }
+
     // Run a specified file
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset())); // it reads the whole file and shows all errors before quitting
+        String source = new String(bytes, Charset.defaultCharset());
+        run(source, true); // it reads the whole file and shows all errors before quitting
 
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (profile && !reporter.hadError) profiler.report(source, System.err);
+        if (allocationProfiler != null && !reporter.hadError) allocationProfiler.reportAllocations(source, System.err);
+        if (timings != null) timings.report(System.err);
+
+        if (reporter.hadError) System.exit(65);
+        if (reporter.hadRuntimeError) System.exit(70);
     }
 
     // Run the prompt
@@ -53,8 +84,13 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run (line);
-            hadError = false;
+            run(line, false);
+            reporter.hadError = false;
+
+            if (timings != null) {
+                timings.report(System.err);
+                timings.reset();
+            }
         }
     }
 
@@ -68,50 +104,70 @@ public class Lox {
      * statements.
      *
      * @param source The source code to be executed.
+     * @param wholeProgram Whether the source is all of the program, so that
+     *                     the optimizer can rely on knowing all its classes.
      */
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
+    private static void run(String source, boolean wholeProgram) {
+        Events.Phase scanning = beginPhase();
+        Scanner scanner = new Scanner(source, reporter);
         List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
+        endPhase(scanning, "scan", source);
+        if (timings != null) timings.tokens += tokens.size();
+
+        Events.Phase parsing = beginPhase();
+        Parser parser = new Parser(tokens, reporter);
         List<Stmt> statements = parser.parse();
+        endPhase(parsing, "parse", source);
 
         // Stop if errors occured
-        if (hadError) return;
+        if (reporter.hadError) return;
 
-        Resolver resolver = new Resolver(interpreter);
+        Events.Phase resolving = beginPhase();
+        Resolver resolver = new Resolver(reporter, interpreter.globals.slots);
         resolver.resolve(statements);
+        endPhase(resolving, "resolve", source);
+        if (timings != null) {
+            timings.nodes += resolver.nodeCount();
+            timings.resolvedLocals += resolver.resolvedLocalCount();
+        }
 
-        if (hadError) return;
-
-        interpreter.interpret(statements);
-    }
+        if (reporter.hadError) return;
 
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
+        Events.Phase optimizing = beginPhase();
+        Optimizer optimizer = new Optimizer(wholeProgram ? resolver.hierarchy() : null, profiler == null);
+        statements = optimizer.optimize(statements);
+        endPhase(optimizing, "optimize", source);
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(
-            error.getMessage() +
-            "\n[line " + error.token.line + "]"
-        );
+        if (profiler != null) profiler.register(statements);
 
-        hadRuntimeError = true;
+        if (timings != null) timings.begin();
+        interpreter.interpret(statements);
+        if (timings != null) timings.end("interpret");
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println(
-            "[line " + line + "] Error" + where + ": " + message
-        );
-        hadError = true;
+    private static Events.Phase beginPhase() {
+        if (timings != null) timings.begin();
+        if (!Events.recording()) return null;
+
+        Events.Phase event = new Events.Phase();
+        event.begin();
+        return event;
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        }
-        else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    /**
+     * Ends the Flight Recorder event of a front-end phase, filling it in
+     * only if a recording will actually keep it, and records the phase in
+     * the --timings report.
+     */
+    private static void endPhase(Events.Phase event, String phase, String source) {
+        if (timings != null) timings.end(phase);
+        if (event == null) return;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.sourceLength = source.length();
+            event.commit();
         }
     }
 }
\ No newline at end of file
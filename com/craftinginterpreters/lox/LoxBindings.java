@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.script.Bindings;
+
+/**
+ * Script bindings that are the globals of a LoxContext rather than a copy
+ * of them: what the host puts in is immediately visible to the scripts,
+ * and what the scripts define is immediately visible to the host.
+ *
+ * Lookups and updates go straight to the globals; iterating copies them.
+ * Values go in and come out converted as described in LoxEngine.
+ * When the context is a fork, the globals it inherited are included, and
+ * removing one only removes it from this context.
+ */
+class LoxBindings extends AbstractMap<String, Object> implements Bindings {
+    final LoxContext context;
+
+    LoxBindings(LoxContext context) {
+        this.context = context;
+    }
+
+    private GlobalEnvironment globals() {
+        return context.interpreter.globals;
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        Object previous = globals().getOrNull(name);
+        globals().define(name, LoxEngine.toLox(value));
+        return LoxEngine.toJava(previous);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return key instanceof String ? LoxEngine.toJava(globals().getOrNull((String)key)) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && globals().isDefined((String)key);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return key instanceof String ? LoxEngine.toJava(globals().remove((String)key)) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        Map<String, Object> all = globals().all();
+        all.replaceAll((name, value) -> LoxEngine.toJava(value));
+        return Collections.unmodifiableMap(all).entrySet();
+    }
+}
@@ -1,8 +1,40 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Something a script can call: a function, a class or a native function.
+ *
+ * Calls with up to four arguments go through call0() to call4(), which
+ * take the arguments one by one so that calling doesn't allocate a list to
+ * hold them. By default they build the list and hand it to call(), so a
+ * native only has to implement call(); LoxFunction and LoxClass implement
+ * them directly. Whichever is used, the caller has already checked that
+ * the number of arguments matches the arity, unless the arity is negative,
+ * in which case the callable checks the number of arguments itself.
+ */
 interface LoxCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, Arrays.asList(a, b, c, d));
+    }
 }
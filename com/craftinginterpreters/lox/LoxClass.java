@@ -3,15 +3,42 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A class, whose methods are fixed once it is created: its method table is
+ * an immutable copy, so a class can be read by any number of threads.
+ *
+ * A class can be made shareable with the shareable() native, after which
+ * its instances keep their fields in a ConcurrentHashMap rather than a
+ * HashMap, so they can be handed to other tasks and contexts. Writing a
+ * field of a shareable instance happens-before any read of that field that
+ * sees the write, on any thread. Each read and write is atomic on its own,
+ * but a read followed by a write, as in this.count = this.count + 1, is not.
+ * Instances of other classes must only be used by one thread at a time.
+ */
 class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
     private final Map<String, LoxFunction> methods;
-    
+    // Looked up once, since the methods of a class and its superclasses never change
+    private final LoxFunction initializer;
+    private final int arity;
+    // How many fields the initializers assign on this, which new instances make room for
+    final int fields;
+
+    // Only read when an instance is created; subclasses created later inherit it
+    volatile boolean shareable;
+
     LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
         this.superclass = superclass;
         this.name = name;
-        this.methods = methods;
+        this.methods = Map.copyOf(methods);
+        this.shareable = superclass != null && superclass.shareable;
+
+        initializer = findMethod("init");
+        arity = initializer == null ? 0 : initializer.arity();
+        // Counts the superclass's fields even if init doesn't call super.init(), which only wastes a little room
+        LoxFunction own = methods.get("init");
+        fields = (superclass == null ? 0 : superclass.fields) + (own == null ? 0 : own.declaration.fields);
     }
 
     /**
@@ -22,9 +49,10 @@ class LoxClass implements LoxCallable {
      * @return the LoxFunction matching the given name, or null if the method does not exist.
      */
     LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
+        if (Metrics.ENABLED) Metrics.methodLookupSteps.increment();
+
+        LoxFunction method = methods.get(name);
+        if (method != null) return method;
 
         if (superclass != null) {
             return superclass.findMethod(name);
@@ -33,6 +61,27 @@ class LoxClass implements LoxCallable {
         return null;
     }
 
+    /**
+     * Returns the class, among this one and its superclasses, that declares
+     * the method with the given name itself, or null if none does.
+     */
+    LoxClass declaring(String name) {
+        for (LoxClass klass = this; klass != null; klass = klass.superclass) {
+            if (klass.methods.containsKey(name)) return klass;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether this class is the given one or one of its subclasses.
+     */
+    boolean inherits(LoxClass ancestor) {
+        for (LoxClass klass = this; klass != null; klass = klass.superclass) {
+            if (klass == ancestor) return true;
+        }
+        return false;
+    }
+
     /**
      * Returns the string representation of the LoxClass,
      * which is the name of the class.
@@ -47,7 +96,8 @@ class LoxClass implements LoxCallable {
     /**
      * Calls the class to create a new instance of it. If the class has an initializer
      * method named "init", it will be called with the provided arguments to initialize
-     * the new instance.
+     * the new instance. Each instantiation is reported to Flight Recorder as a
+     * lox.Instantiation event.
      *
      * @param interpreter the interpreter to use while calling the initializer
      * @param arguments   the arguments to pass to the initializer
@@ -55,15 +105,79 @@ class LoxClass implements LoxCallable {
      */
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
-        if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize(interpreter, instance, arguments);
+        return instantiated(event, instance);
+    }
+
+    // The same as call(), with the arguments passed to the initializer one by one
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize0(interpreter, instance);
+        return instantiated(event, instance);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize1(interpreter, instance, a);
+        return instantiated(event, instance);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize2(interpreter, instance, a, b);
+        return instantiated(event, instance);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize3(interpreter, instance, a, b, c);
+        return instantiated(event, instance);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        Events.Instantiation event = beginInstantiation();
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.initialize4(interpreter, instance, a, b, c, d);
+        return instantiated(event, instance);
+    }
+
+    private LoxInstance instantiate(Interpreter interpreter) {
+        interpreter.allocated(Interpreter.Allocation.INSTANCE);
+        return new LoxInstance(this);
+    }
+
+    // Returns the Flight Recorder event of an instantiation, or null when no recording is running
+    private static Events.Instantiation beginInstantiation() {
+        if (!Events.recording()) return null;
+
+        Events.Instantiation event = new Events.Instantiation();
+        event.begin();
+        return event;
+    }
+
+    private LoxInstance instantiated(Events.Instantiation event, LoxInstance instance) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.className = name;
+                event.commit();
+            }
         }
         return instance;
     }
 
-
     /**
      * Returns the number of arguments that the initializer method of this class
      * takes. If the class does not have an initializer method, it returns 0.
@@ -72,8 +186,6 @@ class LoxClass implements LoxCallable {
      */
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
-        if (initializer == null) return 0;
-        return initializer.arity();
+        return arity;
     }
 }
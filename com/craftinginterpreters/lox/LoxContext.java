@@ -0,0 +1,150 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An isolated set of globals in which scripts are evaluated. Everything a
+ * script defines at the top level stays in its context, and is visible to
+ * the scripts evaluated in it afterwards.
+ *
+ * A context must only be used by one thread at a time. Use one context per
+ * thread to evaluate scripts in parallel.
+ */
+public final class LoxContext {
+    final Interpreter interpreter;
+
+    LoxContext(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Creates a context that starts with every global defined in this one,
+     * in constant time, without re-running the scripts that defined them.
+     *
+     * The globals are copy on write: what either context defines or assigns
+     * afterwards is only visible in that context, and a fork shares the
+     * other's globals until it first writes one. Objects are not copied,
+     * though, so an instance reachable from a global is shared by every
+     * fork.
+     *
+     * This is meant for running a prelude once and then forking a context
+     * from it for every request. The forks can be used by other threads, but
+     * this context must not be running a script while it is forked.
+     *
+     * @return The new context.
+     */
+    public LoxContext fork() {
+        return new LoxContext(new Interpreter(interpreter, new ErrorReporter()));
+    }
+
+    /**
+     * Forks this context like fork(), with the budget applied to every eval()
+     * and call made in the fork.
+     *
+     * @param budget The limits on each evaluation in the fork.
+     * @return The new context.
+     */
+    public LoxContext fork(Budget budget) {
+        return new LoxContext(new BudgetedInterpreter(interpreter, new ErrorReporter(), budget));
+    }
+
+    /**
+     * Defines, or redefines, a global variable in this context only.
+     *
+     * @param name The name of the variable.
+     * @param value Its value, converted to a Lox value as described in LoxEngine.
+     */
+    public void define(String name, Object value) {
+        interpreter.globals.define(name, LoxEngine.toLox(value));
+    }
+
+    /**
+     * Returns the value of a global variable, or null if it is nil or not defined.
+     *
+     * @param name The name of the variable.
+     */
+    public Object get(String name) {
+        return LoxEngine.toJava(interpreter.globals.getOrNull(name));
+    }
+
+    /**
+     * Sends the output of the print statements run in this context to the
+     * given writer instead of standard output.
+     *
+     * @param writer Where print statements write.
+     */
+    public void setOutput(Writer writer) {
+        interpreter.out = writer instanceof PrintWriter
+            ? (PrintWriter)writer
+            : new PrintWriter(writer, true);
+    }
+
+    /**
+     * Calls a global Lox function, or a class to create an instance.
+     *
+     * @param name The name of the global holding the function.
+     * @param arguments The arguments, converted to Lox values as described in LoxEngine.
+     * @return What the function returned.
+     * @throws NoSuchMethodException if there is no such global or it can't be called.
+     * @throws LoxException if the function raises a runtime error.
+     */
+    public Object call(String name, Object... arguments) throws NoSuchMethodException {
+        Object callee = interpreter.globals.getOrNull(name);
+        if (!(callee instanceof LoxCallable)) {
+            throw new NoSuchMethodException("No function '" + name + "' in this context.");
+        }
+
+        return invoke((LoxCallable)callee, arguments);
+    }
+
+    /**
+     * Calls a method on an instance that came from a script.
+     *
+     * @param instance The instance, as returned by a script.
+     * @param name The name of the method.
+     * @param arguments The arguments, converted to Lox values as described in LoxEngine.
+     * @return What the method returned.
+     * @throws NoSuchMethodException if the instance has no such method.
+     * @throws LoxException if the method raises a runtime error.
+     */
+    public Object callMethod(Object instance, String name, Object... arguments) throws NoSuchMethodException {
+        if (!(instance instanceof LoxInstance)) {
+            throw new IllegalArgumentException("Not a Lox instance: " + instance);
+        }
+
+        Object method;
+        try {
+            method = ((LoxInstance)instance).get(interpreter, new Token(TokenType.IDENTIFIER, name, null, 0));
+        } catch (RuntimeError error) {
+            throw new NoSuchMethodException(error.getMessage());
+        }
+        if (!(method instanceof LoxCallable)) {
+            throw new NoSuchMethodException("'" + name + "' is not a method.");
+        }
+
+        return invoke((LoxCallable)method, arguments);
+    }
+
+    private Object invoke(LoxCallable callable, Object[] arguments) {
+        List<Object> values = new ArrayList<>();
+        if (arguments != null) {
+            for (Object argument : arguments) {
+                values.add(LoxEngine.toLox(argument));
+            }
+        }
+
+        if (callable.arity() >= 0 && values.size() != callable.arity()) {
+            throw new IllegalArgumentException("Expected " + callable.arity() +
+                " arguments but got " + values.size() + ".");
+        }
+
+        try {
+            return LoxEngine.toJava(interpreter.callFromHost(callable, values));
+        } catch (RuntimeError error) {
+            throw LoxException.of(error);
+        }
+    }
+}
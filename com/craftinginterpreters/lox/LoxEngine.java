@@ -0,0 +1,245 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entry point for embedding Lox in a Java application.
+ *
+ * <pre>
+ * LoxEngine engine = new LoxEngine();
+ * engine.defineFunction("square", 1, args -> (Double)args.get(0) * (Double)args.get(0));
+ *
+ * CompiledScript script = engine.compile("square(4) + 1;");
+ * if (!script.isValid()) throw new IllegalStateException(script.diagnostics().toString());
+ *
+ * LoxContext context = engine.newContext();
+ * Object result = engine.eval(script, context); // 17.0
+ * </pre>
+ *
+ * Compiling does the scanning, parsing and resolving once; evaluating only
+ * runs the resolved tree. Compilation errors are collected in the returned
+ * script instead of being printed.
+ *
+ * Values cross the boundary as null for nil, Boolean, Double and String.
+ * Other Java numbers handed to Lox are converted to Double.
+ *
+ * Java classes and objects can also be handed to scripts, which then call
+ * their public methods directly:
+ *
+ * <pre>
+ * engine.defineClass("ArrayList", ArrayList.class);
+ * engine.defineObject("inventory", inventoryService);
+ * engine.defineStaticMethod("max", Math.class, "max");
+ *
+ * // var items = ArrayList();
+ * // items.add(inventory.lookup("widget"));
+ * // print max(items.size(), 1);
+ * </pre>
+ *
+ * See HostMember for how Lox values are converted to the Java types the
+ * methods take.
+ *
+ * An engine can be shared by threads: compile() and newContext() may be
+ * called concurrently, and compiled scripts can be evaluated by several
+ * threads at once, see CompiledScript. Each context must only be used by
+ * one thread at a time.
+ *
+ * A script can be evaluated in any context of the engine that compiled
+ * it, but not in those of other engines: each engine numbers the globals
+ * of its scripts on its own.
+ */
+public final class LoxEngine {
+    private final Map<String, Object> hostGlobals = new LinkedHashMap<>();
+    private final GlobalEnvironment.Slots slots = new GlobalEnvironment.Slots(); // of every script and context of this engine
+
+    /**
+     * Scans, parses, resolves and optimizes a script.
+     *
+     * @param source The source code of the script.
+     * @return The compiled script, with the errors found if any.
+     */
+    public CompiledScript compile(String source) {
+        Collector collector = new Collector();
+
+        List<Token> tokens = new Scanner(source, collector).scanTokens();
+        List<Stmt> statements = new Parser(tokens, collector).parse();
+        if (!collector.hadError) {
+            new Resolver(collector, slots).resolve(statements);
+        }
+
+        if (collector.hadError) {
+            return new CompiledScript(List.of(), collector.diagnostics, slots);
+        }
+        return new CompiledScript(new Optimizer().optimize(statements), collector.diagnostics, slots);
+    }
+
+    /**
+     * Creates a context with fresh globals: the built-in functions and every
+     * global the host has defined on this engine so far.
+     */
+    public LoxContext newContext() {
+        return newContext(new Interpreter(new ErrorReporter(), slots));
+    }
+
+    /**
+     * Creates a context like newContext(), in which every eval() and call is
+     * stopped with a BudgetExceededException if it exceeds the budget.
+     *
+     * @param budget The limits on each evaluation.
+     */
+    public LoxContext newContext(Budget budget) {
+        return newContext(new BudgetedInterpreter(new ErrorReporter(), slots, budget));
+    }
+
+    private LoxContext newContext(Interpreter interpreter) {
+        synchronized (hostGlobals) {
+            for (Map.Entry<String, Object> global : hostGlobals.entrySet()) {
+                interpreter.globals.define(global.getKey(), global.getValue());
+            }
+        }
+        return new LoxContext(interpreter);
+    }
+
+    /**
+     * Runs a compiled script in a context.
+     *
+     * @param script A script returned by compile() without errors.
+     * @param context The context whose globals the script reads and defines.
+     * @return The value of the script's last statement if it is an expression
+     *         statement, otherwise null.
+     * @throws IllegalArgumentException if the script has compilation errors, or
+     *         if the script and the context come from different engines.
+     * @throws LoxException if the script raises a runtime error.
+     */
+    public Object eval(CompiledScript script, LoxContext context) {
+        if (!script.isValid()) {
+            throw new IllegalArgumentException("Script has compilation errors: " + script.diagnostics());
+        }
+        if (script.slots() != context.interpreter.globals.slots) {
+            throw new IllegalArgumentException("Script and context come from different engines.");
+        }
+
+        try {
+            return toJava(context.interpreter.run(script.statements()));
+        } catch (RuntimeError error) {
+            throw LoxException.of(error);
+        }
+    }
+
+    /**
+     * Defines a global variable in every context created from now on.
+     *
+     * @param name The name of the variable.
+     * @param value Its value.
+     */
+    public void define(String name, Object value) {
+        synchronized (hostGlobals) {
+            hostGlobals.put(name, toLox(value));
+        }
+    }
+
+    /**
+     * Defines a global function implemented in Java in every context created
+     * from now on.
+     *
+     * @param name The name scripts call the function by.
+     * @param arity The number of arguments it takes, checked on each call.
+     * @param function The implementation.
+     */
+    public void defineFunction(String name, int arity, NativeFunction function) {
+        define(name, new HostFunction(name, arity, function));
+    }
+
+    /**
+     * Defines a global function implemented in Java that starts an
+     * asynchronous operation, in every context created from now on. Scripts
+     * get a promise of its result, which their event loop settles once the
+     * operation completes.
+     *
+     * @param name The name scripts call the function by.
+     * @param arity The number of arguments it takes, checked on each call.
+     * @param function The implementation.
+     */
+    public void defineAsyncFunction(String name, int arity, AsyncFunction function) {
+        define(name, new EventLoop.AsyncHostFunction(name, arity, function));
+    }
+
+    /**
+     * Defines a global holding a Java class in every context created from
+     * now on. Scripts call it to create an object with one of the class's
+     * public constructors, and call its public static methods as methods
+     * of it. The objects they create, and every other object the class's
+     * methods return, are Java objects whose public methods scripts can
+     * call in turn.
+     *
+     * @param name The name scripts know the class by.
+     * @param type The class.
+     */
+    public void defineClass(String name, Class<?> type) {
+        define(name, HostClass.of(type));
+    }
+
+    /**
+     * Defines a global holding a Java object in every context created from
+     * now on. Scripts call its public methods, and those of the objects
+     * they return. Every context sees the same object, so it must be safe
+     * to use from all the threads running them.
+     *
+     * @param name The name scripts know the object by.
+     * @param object The object.
+     */
+    public void defineObject(String name, Object object) {
+        define(name, new HostObject(object));
+    }
+
+    /**
+     * Defines a global function that calls a public static Java method, in
+     * every context created from now on. If the method is overloaded, the
+     * function takes the arguments of any of the overloads.
+     *
+     * @param name The name scripts call the function by.
+     * @param type The class declaring the method.
+     * @param method The name of the method.
+     * @throws IllegalArgumentException if the class has no such public static method.
+     */
+    public void defineStaticMethod(String name, Class<?> type, String method) {
+        HostMember member = HostClass.of(type).staticMethod(method);
+        if (member == null) {
+            throw new IllegalArgumentException("No public static method '" + method + "' in " + type.getName() + ".");
+        }
+        define(name, member);
+    }
+
+    /**
+     * Converts a Java value into the Lox value representing it.
+     */
+    static Object toLox(Object value) {
+        if (value instanceof Double) return value;
+        if (value instanceof Number) return ((Number)value).doubleValue();
+        return value;
+    }
+
+    /**
+     * Converts a Lox value into the Java value handed to the host: Java
+     * objects that scripts got from the host are unwrapped.
+     */
+    static Object toJava(Object value) {
+        return HostObject.unwrap(value);
+    }
+
+    /**
+     * Collects the errors of one compilation instead of printing them.
+     */
+    private static class Collector extends ErrorReporter {
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+
+        @Override
+        void report(int line, String where, String message) {
+            diagnostics.add(new Diagnostic(line, "Error" + where + ": " + message));
+            hadError = true;
+        }
+    }
+}
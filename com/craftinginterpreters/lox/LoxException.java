@@ -0,0 +1,30 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A runtime error raised by a script evaluated through a LoxEngine.
+ */
+public class LoxException extends RuntimeException {
+    private final int line;
+
+    LoxException(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+
+    /**
+     * Converts a runtime error into the exception thrown to the host.
+     */
+    static LoxException of(RuntimeError error) {
+        if (error instanceof BudgetExceeded) {
+            return new BudgetExceededException(error.getMessage(), error.token.line);
+        }
+        return new LoxException(error.getMessage(), error.token.line);
+    }
+
+    /**
+     * Returns the source line the error was raised on.
+     */
+    public int line() {
+        return line;
+    }
+}
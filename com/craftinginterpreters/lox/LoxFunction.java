@@ -3,7 +3,7 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
+    final Stmt.Function declaration;
     private final Environment closure;
     private final boolean isInitializer;
 
@@ -21,9 +21,14 @@ class LoxFunction implements LoxCallable {
      * @return a new LoxFunction with the given instance bound
      */
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
+        return new LoxFunction(declaration, bound(instance), isInitializer);
+    }
+
+    // The environment holding "this", between the closure and the environment of each call
+    private Environment bound(LoxInstance instance) {
+        Environment environment = new Environment(closure, 1);
         environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return environment;
     }
 
     /**
@@ -50,8 +55,10 @@ class LoxFunction implements LoxCallable {
     /**
      * Calls the function with the given arguments. If the function is an
      * initializer and the call returns normally, it returns the value of
-     * the "this" variable. Otherwise, it returns the value returned by the
-     * function.
+     * the "this" variable. If it is a generator, it returns a Generator
+     * over its body. Otherwise, it returns the value returned by the
+     * function. Calls are reported to Flight Recorder as lox.FunctionCall
+     * events when they take longer than the event's threshold.
      *
      * @param interpreter the interpreter to use to execute the function
      * @param arguments   the arguments to pass to the function
@@ -59,22 +66,166 @@ class LoxFunction implements LoxCallable {
      */
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+        Environment environment = environment();
+        for (int i = 0; i < declaration.params.size(); i++) {
+            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+        }
+        return run(interpreter, environment);
+    }
+
+    // The same as call(), with the arguments bound to the parameters one by one
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return run(interpreter, environment());
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Environment environment = environment();
+        environment.define(parameter(0), a);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Environment environment = environment();
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Environment environment = environment();
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        environment.define(parameter(2), c);
+        return run(interpreter, environment);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        Environment environment = environment();
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        environment.define(parameter(2), c);
+        environment.define(parameter(3), d);
+        return run(interpreter, environment);
+    }
 
+    /**
+     * Runs the function as the initializer of a new instance, as calling
+     * bind(instance) would, but without creating the bound LoxFunction:
+     * only the environment holding "this" is, which the body may capture.
+     */
+    void initialize(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        Environment environment = environment(interpreter, instance);
         for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-                arguments.get(i));
+            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+        }
+        run(interpreter, environment);
+    }
+
+    // The same as initialize(), with the arguments bound to the parameters one by one
+
+    void initialize0(Interpreter interpreter, LoxInstance instance) {
+        run(interpreter, environment(interpreter, instance));
+    }
+
+    void initialize1(Interpreter interpreter, LoxInstance instance, Object a) {
+        Environment environment = environment(interpreter, instance);
+        environment.define(parameter(0), a);
+        run(interpreter, environment);
+    }
+
+    void initialize2(Interpreter interpreter, LoxInstance instance, Object a, Object b) {
+        Environment environment = environment(interpreter, instance);
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        run(interpreter, environment);
+    }
+
+    void initialize3(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c) {
+        Environment environment = environment(interpreter, instance);
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        environment.define(parameter(2), c);
+        run(interpreter, environment);
+    }
+
+    void initialize4(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c, Object d) {
+        Environment environment = environment(interpreter, instance);
+        environment.define(parameter(0), a);
+        environment.define(parameter(1), b);
+        environment.define(parameter(2), c);
+        environment.define(parameter(3), d);
+        run(interpreter, environment);
+    }
+
+    private String parameter(int index) {
+        return declaration.params.get(index).lexeme;
+    }
+
+    /**
+     * Creates the environment of a call, for the arguments to be bound in,
+     * with room for every variable the body declares outside of blocks.
+     * Running the body counts it.
+     */
+    private Environment environment() {
+        return new Environment(closure, declaration.variables);
+    }
+
+    /**
+     * Creates the environment of a call as the initializer of an instance,
+     * enclosed by one holding "this".
+     */
+    private Environment environment(Interpreter interpreter, LoxInstance instance) {
+        interpreter.allocated(Interpreter.Allocation.ENVIRONMENT); // the one holding "this"
+        return new Environment(bound(instance), declaration.variables);
+    }
+
+    /**
+     * Runs the body in the environment of a call, which already holds the
+     * arguments.
+     */
+    private Object run(Interpreter interpreter, Environment environment) {
+        if (!Events.recording()) return invoke(interpreter, environment);
+
+        Events.FunctionCall event = new Events.FunctionCall();
+        event.begin();
+
+        try {
+            return invoke(interpreter, environment);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.function = declaration.name.lexeme;
+                event.arity = arity();
+                event.commit();
+            }
+        }
+    }
+
+    private Object invoke(Interpreter interpreter, Environment environment) {
+        // A generator's body only starts running when its first value is asked for
+        if (declaration.generator) {
+            interpreter.allocated(Interpreter.Allocation.ENVIRONMENT);
+            return new Generator(declaration, environment);
         }
 
         try {
+            interpreter.enter(declaration.name);
             interpreter.executeBlock(declaration.body, environment);
         } catch (Return returnValue) {
-            if (isInitializer) return closure.getAt(0, "this");
+            if (isInitializer) return environment.getAt(1, "this");
                         
             return returnValue.value;
+        } finally {
+            interpreter.exit();
         }
 
-        if (isInitializer) return closure.getAt(0, "this");
+        if (isInitializer) return environment.getAt(1, "this");
         return null;
     }
-}
\ No newline at end of file
+}
@@ -2,13 +2,31 @@ package com.craftinginterpreters.lox;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    // Stands for a nil field, since a ConcurrentHashMap can't hold null
+    private static final Object NIL = new Object();
+    // Returned by field() for a field the instance doesn't have
+    static final Object ABSENT = new Object();
 
+    final LoxClass klass;
+    private final Map<String, Object> fields;
+
+    /**
+     * Creates an instance with room for the fields its class's initializers
+     * assign, so that initializing it doesn't grow the map, and an instance
+     * with few fields doesn't take the room of the default sixteen.
+     */
     LoxInstance(LoxClass klass) {
         this.klass = klass;
+        int expected = klass.fields;
+        if (klass.shareable) {
+            this.fields = expected == 0 ? new ConcurrentHashMap<>() : new ConcurrentHashMap<>(expected);
+        } else {
+            this.fields = expected == 0 ? new HashMap<>() : new HashMap<>((int)(expected / 0.75f) + 1);
+        }
+        if (Metrics.ENABLED) Metrics.instances.increment();
     }
 
     /**
@@ -17,21 +35,36 @@ class LoxInstance {
      * an instance variable or a method with the given name, it throws a runtime error.
      *
 
+     * @param interpreter the interpreter accessing the field
      * @param name the name of the field to retrieve
      * @return the value of the field, or the method with the same name
      * @throws RuntimeError if the field does not exist
      */
-    Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
-        }
+    Object get(Interpreter interpreter, Token name) {
+        if (Metrics.ENABLED) Metrics.propertyLookups.increment();
+
+        Object value = fields.get(name.lexeme);
+        if (value != null) return value == NIL ? null : value;
 
         LoxFunction method = klass.findMethod(name.lexeme);
-        if (method != null) return method.bind(this);
+        if (method != null) {
+            interpreter.allocated(Interpreter.Allocation.BOUND_METHOD);
+            return method.bind(this);
+        }
 
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
+    /**
+     * Returns the value of a field, or ABSENT if the instance has no field
+     * with that name, without looking for a method.
+     */
+    Object field(String name) {
+        Object value = fields.get(name);
+        if (value == null) return ABSENT;
+        return value == NIL ? null : value;
+    }
+
     /**
      * Sets the value of a property on the LoxInstance.
      * 
@@ -39,7 +72,7 @@ class LoxInstance {
      * @param value The value to set for the property.
      */
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        fields.put(name.lexeme, value == null ? NIL : value);
     }
 
     /**
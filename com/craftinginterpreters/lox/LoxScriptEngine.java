@@ -0,0 +1,240 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+/**
+ * A javax.script engine running Lox, created by LoxScriptEngineFactory.
+ *
+ * The engine scope bindings it creates are LoxBindings, the globals of a
+ * LoxContext themselves, so scripts run in them without any copying, and
+ * look up the globals they don't define in the global scope. Other
+ * Bindings implementations still work: their entries, and those of the
+ * global scope, are copied in before each evaluation and the globals
+ * copied back out after it.
+ *
+ * Like a LoxContext, an engine and its bindings must only be used by one
+ * thread at a time. Scripts compiled through the engine can be evaluated
+ * by several engines at once.
+ */
+class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final LoxScriptEngineFactory factory;
+
+    LoxScriptEngine(LoxScriptEngineFactory factory) {
+        this.factory = factory;
+        setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new LoxBindings(factory.engine.newContext());
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return eval(compileScript(script, context), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(String script) throws ScriptException {
+        return new Compiled(compileScript(script, context));
+    }
+
+    @Override
+    public javax.script.CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... arguments) throws ScriptException, NoSuchMethodException {
+        LoxContext lox = contextFor(context);
+        try {
+            return lox.call(name, arguments);
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        } finally {
+            copyBack(lox, context);
+        }
+    }
+
+    @Override
+    public Object invokeMethod(Object instance, String name, Object... arguments) throws ScriptException, NoSuchMethodException {
+        LoxContext lox = contextFor(context);
+        try {
+            return lox.callMethod(instance, name, arguments);
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        } finally {
+            copyBack(lox, context);
+        }
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> type) {
+        return implement(null, type);
+    }
+
+    @Override
+    public <T> T getInterface(Object instance, Class<T> type) {
+        if (!(instance instanceof LoxInstance)) {
+            throw new IllegalArgumentException("Not a Lox instance: " + instance);
+        }
+        return implement(instance, type);
+    }
+
+    /**
+     * Implements an interface by calling the global function, or the method
+     * of the instance, with the same name as each of its methods.
+     */
+    private <T> T implement(Object instance, Class<T> type) {
+        if (type == null || !type.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + type);
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+            (self, method, arguments) -> {
+                if (method.getDeclaringClass() == Object.class) return objectMethod(self, method, arguments);
+
+                return instance == null
+                    ? invokeFunction(method.getName(), arguments)
+                    : invokeMethod(instance, method.getName(), arguments);
+            });
+        return type.cast(proxy);
+    }
+
+    private static Object objectMethod(Object self, Method method, Object[] arguments) {
+        switch (method.getName()) {
+            case "equals": return self == arguments[0];
+            case "hashCode": return System.identityHashCode(self);
+            default: return "Lox implementation of " + self.getClass().getInterfaces()[0].getName();
+        }
+    }
+
+    private CompiledScript compileScript(String source, ScriptContext context) throws ScriptException {
+        CompiledScript script = factory.compile(source);
+        if (!script.isValid()) {
+            Diagnostic first = script.diagnostics().get(0);
+            throw new ScriptException(first.message(), fileName(context), first.line());
+        }
+        return script;
+    }
+
+    private Object eval(CompiledScript script, ScriptContext context) throws ScriptException {
+        LoxContext lox = contextFor(context);
+        try {
+            return factory.engine.eval(script, lox);
+        } catch (LoxException error) {
+            throw scriptException(error, context);
+        } finally {
+            copyBack(lox, context);
+        }
+    }
+
+    /**
+     * Returns the Lox context to run in for a script context: the one behind
+     * its engine scope when those are LoxBindings, otherwise a new one holding
+     * a copy of its bindings.
+     */
+    private LoxContext contextFor(ScriptContext context) {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        LoxContext lox;
+        if (bindings instanceof LoxBindings) {
+            lox = ((LoxBindings)bindings).context;
+            // Scripts read the global scope through, for whatever they don't define
+            lox.interpreter.globals.fallback = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+        } else {
+            lox = factory.engine.newContext();
+            Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+            if (global != null) copyInto(lox, global);
+            if (bindings != null) copyInto(lox, bindings);
+            // Forked so that its own globals are only what the script defines, for copyBack()
+            lox = lox.fork();
+        }
+
+        lox.setOutput(context.getWriter());
+        return lox;
+    }
+
+    private static void copyInto(LoxContext lox, Bindings bindings) {
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            lox.define(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Copies the globals a script defined or assigned back into foreign
+     * engine scope bindings, as Java values. The built-in functions and
+     * what was copied in are left out, unless the script assigned it.
+     */
+    private static void copyBack(LoxContext lox, ScriptContext context) {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (bindings == null || bindings instanceof LoxBindings) return;
+
+        for (Map.Entry<String, Object> global : lox.interpreter.globals.values().entrySet()) {
+            bindings.put(global.getKey(), LoxEngine.toJava(global.getValue()));
+        }
+    }
+
+    private static ScriptException scriptException(LoxException error, ScriptContext context) {
+        ScriptException exception = new ScriptException(error.getMessage(), fileName(context), error.line());
+        exception.initCause(error);
+        return exception;
+    }
+
+    private static String fileName(ScriptContext context) {
+        Object name = context.getAttribute(FILENAME);
+        return name == null ? null : name.toString();
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int n; (n = reader.read(buffer)) != -1; ) {
+                source.append(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+
+    private class Compiled extends javax.script.CompiledScript {
+        private final CompiledScript script;
+
+        Compiled(CompiledScript script) {
+            this.script = script;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            return LoxScriptEngine.this.eval(script, context);
+        }
+
+        @Override
+        public javax.script.ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+}
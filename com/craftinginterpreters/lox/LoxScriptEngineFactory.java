@@ -0,0 +1,124 @@
+package com.craftinginterpreters.lox;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Makes Lox available through javax.script, under the names "lox" and "jlox".
+ *
+ * All the engines created by one factory share a cache of compiled scripts,
+ * so evaluating the same source again, from any engine or thread, skips
+ * scanning, parsing and resolving.
+ */
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+    private static final int CACHE_SIZE = 256;
+
+    final LoxEngine engine = new LoxEngine();
+
+    // Least recently used first; guarded by itself
+    private final Map<String, CompiledScript> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Returns the compiled form of a source, compiling it only if it isn't
+     * among the most recently used ones.
+     */
+    CompiledScript compile(String source) {
+        synchronized (cache) {
+            CompiledScript script = cache.get(source);
+            if (script != null) return script;
+        }
+
+        // Compiled outside the lock; two threads may both compile a new source, which is harmless
+        CompiledScript script = engine.compile(source);
+        if (script.isValid()) {
+            synchronized (cache) {
+                cache.put(source, script);
+            }
+        }
+        return script;
+    }
+
+    @Override
+    public String getEngineName() {
+        return "jlox";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("lox");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("application/x-lox", "text/x-lox");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("lox", "jlox", "Lox");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Lox";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            // An engine's default bindings are one interpreter's globals
+            case "THREADING": return null;
+            default: return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... arguments) {
+        return object + "." + method + "(" + String.join(", ", arguments) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay.replace("\"", "") + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement);
+            if (!statement.trim().endsWith(";") && !statement.trim().endsWith("}")) program.append(';');
+            program.append('\n');
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Cumulative counters of what every interpreter in the JVM has done.
+ *
+ * Counting is switched on with -Dlox.metrics=true. ENABLED is a constant,
+ * so when it is off the JIT folds away every "if (Metrics.ENABLED)" guard
+ * at the counting sites. When it is on, each counter is a LongAdder, which
+ * stripes its cells across threads so that concurrent increments don't
+ * contend on a single cache line.
+ */
+final class Metrics {
+    static final boolean ENABLED = Boolean.getBoolean("lox.metrics");
+
+    static final LongAdder environments = new LongAdder();
+    static final LongAdder calls = new LongAdder();
+    static final LongAdder instances = new LongAdder();
+    static final LongAdder propertyLookups = new LongAdder();
+    static final LongAdder methodLookupSteps = new LongAdder();
+    static final LongAdder boxedDoubles = new LongAdder();
+    static final LongAdder statements = new LongAdder();
+
+    static {
+        if (ENABLED) register();
+    }
+
+    private Metrics() {}
+
+    /**
+     * Takes a snapshot of the counters. The counters are read one after the
+     * other while other threads may keep running, so the snapshot is not an
+     * atomic cut across all of them.
+     *
+     * @return the current value of every counter
+     */
+    static InterpreterStats snapshot() {
+        return new InterpreterStats(
+            environments.sum(),
+            calls.sum(),
+            instances.sum(),
+            propertyLookups.sum(),
+            methodLookupSteps.sum(),
+            boxedDoubles.sum(),
+            statements.sum());
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new Bean(), new ObjectName("com.craftinginterpreters.lox:type=Interpreter"));
+        } catch (JMException e) {
+            System.err.println("Could not register the interpreter MBean: " + e.getMessage());
+        }
+    }
+
+    private static class Bean implements InterpreterStatsMXBean {
+        @Override
+        public long getEnvironmentsAllocated() { return environments.sum(); }
+
+        @Override
+        public long getCallsMade() { return calls.sum(); }
+
+        @Override
+        public long getInstancesCreated() { return instances.sum(); }
+
+        @Override
+        public long getPropertyLookups() { return propertyLookups.sum(); }
+
+        @Override
+        public long getMethodLookupSteps() { return methodLookupSteps.sum(); }
+
+        @Override
+        public long getBoxedDoubles() { return boxedDoubles.sum(); }
+
+        @Override
+        public long getStatementsExecuted() { return statements.sum(); }
+    }
+}
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * An error raised by a native function. Natives aren't told where they are
+ * called from, so the interpreter turns this into a RuntimeError reported
+ * at the call.
+ */
+class NativeError extends RuntimeException {
+    NativeError(String message) {
+        super(message);
+    }
+}
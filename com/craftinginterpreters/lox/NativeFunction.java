@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * A Java function that scripts can call like any Lox function once it has
+ * been registered with LoxEngine.defineFunction().
+ *
+ * Arguments and results are Lox values: null for nil, Boolean, Double,
+ * String, or objects that came from the script itself.
+ */
+@FunctionalInterface
+public interface NativeFunction {
+    Object call(List<Object> arguments);
+}
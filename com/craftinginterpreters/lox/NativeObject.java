@@ -0,0 +1,16 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * An object implemented in Java whose methods scripts can call with the
+ * usual syntax, such as channel.send(value). Natives have no fields.
+ */
+abstract class NativeObject {
+    /**
+     * Returns the method with the given name, already bound to this object,
+     * or null if there is none.
+     *
+     * @param name The name of the method, as it appears in the property
+     *             access, for methods that report errors later on.
+     */
+    abstract LoxCallable method(Token name);
+}
@@ -0,0 +1,79 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Formats numbers the way print shows them: as Double.toString does, but
+ * without the ".0" it gives whole numbers.
+ *
+ * Whole numbers below ten million, the ones scripts print the most, take a
+ * fast path that writes their digits straight into the caller's buffer.
+ * Every other number is written as Double.toString gives it. Below ten
+ * million it has a fraction, and from there on Double.toString switches to
+ * scientific notation, so neither ends with ".0" and the output is exactly
+ * what stripping that suffix used to give.
+ */
+final class Numbers {
+    // Double.toString writes whole numbers from here on as 1.0E7 and so on
+    private static final double PLAIN_LIMIT = 1e7;
+
+    // The longest Double.toString, as in -2.2250738585072014E-308
+    static final int MAX_LENGTH = 24;
+
+    private Numbers() {}
+
+    static String toString(double value) {
+        if (isPlainWhole(value)) {
+            return Long.toString((long)value);
+        }
+        if (value == 0) return "-0"; // negative zero
+
+        return Double.toString(value);
+    }
+
+    /**
+     * Writes a number into a buffer with room for MAX_LENGTH characters
+     * from the offset on.
+     *
+     * @return The offset just past the last character written.
+     */
+    static int write(double value, char[] buffer, int offset) {
+        if (value == 0) {
+            if (Double.doubleToRawLongBits(value) != 0) buffer[offset++] = '-';
+            buffer[offset] = '0';
+            return offset + 1;
+        }
+
+        if (isPlainWhole(value)) {
+            long whole = (long)value;
+            if (whole < 0) {
+                buffer[offset++] = '-';
+                whole = -whole;
+            }
+
+            int end = offset + digits(whole);
+            for (int i = end - 1; i >= offset; i--) {
+                buffer[i] = (char)('0' + whole % 10);
+                whole /= 10;
+            }
+            return end;
+        }
+
+        String text = Double.toString(value);
+        text.getChars(0, text.length(), buffer, offset);
+        return offset + text.length();
+    }
+
+    // Negative zero is not one, since it is printed with its sign
+    private static boolean isPlainWhole(double value) {
+        return value > -PLAIN_LIMIT && value < PLAIN_LIMIT && value == (long)value &&
+            (value != 0 || Double.doubleToRawLongBits(value) == 0);
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
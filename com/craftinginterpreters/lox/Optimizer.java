@@ -0,0 +1,544 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a resolved tree, replacing the shapes that loops run most often
+ * with superinstructions: single nodes that do in one visit what the
+ * subtree they replace did through several visits and variable lookups.
+ *
+ * <pre>
+ * i &lt; 10           CompareConstant    a variable against a number, with &lt; &lt;= &gt; or &gt;=
+ * i &lt; n            CompareVariables   two variables
+ * i = i + 1        Increment          a variable plus or minus a number
+ * x == nil         IsNil              also x != nil, nil == x and nil != x
+ * a.b = a.b + x    UpdateField        also with - * or /, and on this
+ * a.b(x)           Invoke             a method call, found without a name lookup
+ * super.b(x)       SuperInvoke
+ * f(x)             Inline             a call of a small function, with its body copied in
+ * a * b            NumberBinary       - + * / &lt; &lt;= &gt; or &gt;= of operands proven to be numbers
+ * </pre>
+ *
+ * A superinstruction behaves exactly like the subtree it replaces: it
+ * evaluates the same operands in the same order and raises the same errors
+ * at the same tokens. Patterns that mention an operand twice are only
+ * fused when that operand is a variable or this, which can be read once
+ * instead of twice without anyone noticing.
+ *
+ * The pass runs once, after the resolver and before the tree is handed to
+ * any interpreter. Nodes with nothing fused below them are kept as they
+ * are; the others are rebuilt with what the resolver stored on them.
+ *
+ * Given the ClassHierarchy of a whole program, it also devirtualizes the
+ * method calls it can: a call to a method only one class declares is marked
+ * with that declaration, and a call to a method no field shares the name of
+ * is marked as never finding a field instead.
+ *
+ * Calls of a global function the script declares only once, and
+ * devirtualized calls of a method, get a copy of the body of the function
+ * when it is small enough, as the Inliner decides. They only speculate that
+ * they call that function: each checks that it does before evaluating the
+ * copy, and calls whatever it calls instead for good once it doesn't; see
+ * Interpreter.visitInlineExpr(). Functions are never inlined into
+ * themselves, so recursive ones are only called, and copies are only
+ * nested MAX_INLINING_DEPTH deep.
+ *
+ * Before rewriting anything it runs TypeInference over the script, and
+ * operators whose operands are always numbers become NumberBinary nodes,
+ * which have no errors to raise.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private static final int MAX_INLINING_DEPTH = 3;
+
+    private final ClassHierarchy hierarchy; // null unless the program is closed
+    private final boolean inlines;
+
+    // The global functions the script declares, by name; null for names declared more than once
+    private final Map<String, Stmt.Function> functions = new HashMap<>();
+    // The functions being optimized or inlined, which calls inside them don't inline
+    private final Set<Stmt.Function> enclosing = new HashSet<>();
+    private int inlined = 0; // how many copies deep the optimizer is
+    private TypeInference types;
+
+    /**
+     * Creates an optimizer for a script that may use classes declared
+     * elsewhere, such as a line of the REPL.
+     */
+    Optimizer() {
+        this(null, true);
+    }
+
+    /**
+     * Creates an optimizer for a whole program, as described by the
+     * hierarchy its resolver built.
+     */
+    Optimizer(ClassHierarchy hierarchy) {
+        this(hierarchy, true);
+    }
+
+    /**
+     * Creates an optimizer given the hierarchy of a whole program, or null,
+     * that inlines calls only if told to. Profilers need the calls they
+     * count to stay calls.
+     */
+    Optimizer(ClassHierarchy hierarchy, boolean inlines) {
+        this.hierarchy = hierarchy;
+        this.inlines = inlines;
+    }
+
+    /**
+     * Optimizes a resolved script.
+     *
+     * @return The statements to run instead.
+     */
+    List<Stmt> optimize(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                Stmt.Function function = (Stmt.Function)statement;
+                String name = function.name.lexeme;
+                functions.put(name, functions.containsKey(name) ? null : function);
+            }
+        }
+
+        types = TypeInference.infer(statements);
+        return optimizeStatements(statements);
+    }
+
+    private List<Stmt> optimizeStatements(List<Stmt> statements) {
+        List<Stmt> optimized = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            Stmt replacement = optimize(statement);
+            if (replacement != statement && optimized == null) {
+                optimized = new ArrayList<>(statements.subList(0, i));
+            }
+            if (optimized != null) optimized.add(replacement);
+        }
+
+        return optimized == null ? statements : optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private List<Expr> optimizeAll(List<Expr> expressions) {
+        List<Expr> optimized = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            Expr expression = expressions.get(i);
+            Expr replacement = optimize(expression);
+            if (replacement != expression && optimized == null) {
+                optimized = new ArrayList<>(expressions.subList(0, i));
+            }
+            if (optimized != null) optimized.add(replacement);
+        }
+
+        return optimized == null ? expressions : optimized;
+    }
+
+    /**
+     * Returns the optimized copy of the body of a function to evaluate in
+     * place of a call with the given number of arguments, or null if the
+     * call should stay one.
+     */
+    private Expr inline(Stmt.Function function, boolean method, int arguments) {
+        if (!inlines || function.params.size() != arguments || inlined == MAX_INLINING_DEPTH ||
+                enclosing.contains(function)) {
+            return null;
+        }
+
+        Expr body = Inliner.body(function, method);
+        if (body == null) return null;
+
+        enclosing.add(function);
+        inlined++;
+        try {
+            return optimize(body);
+        } finally {
+            inlined--;
+            enclosing.remove(function);
+        }
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Double;
+    }
+
+    private static boolean isNil(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal)expr).value == null;
+    }
+
+    /**
+     * Returns whether two expressions read the same variable, or both read
+     * this, so that evaluating either gives the same value.
+     */
+    private static boolean sameVariable(Expr a, Expr b) {
+        if (a instanceof Expr.Variable && b instanceof Expr.Variable) {
+            Expr.Variable x = (Expr.Variable)a;
+            Expr.Variable y = (Expr.Variable)b;
+            return x.name.lexeme.equals(y.name.lexeme) && x.depth == y.depth && x.slot == y.slot;
+        }
+
+        return a instanceof Expr.This && b instanceof Expr.This &&
+            ((Expr.This)a).depth == ((Expr.This)b).depth;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+
+        // i = i + 1, matched before optimizing, which may have made a NumberBinary of it
+        if (expr.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)expr.value;
+            TokenType operator = binary.operator.type;
+            if ((operator == TokenType.PLUS || operator == TokenType.MINUS) &&
+                    binary.left instanceof Expr.Variable && isNumber(binary.right)) {
+                Expr.Variable variable = (Expr.Variable)binary.left;
+                if (variable.name.lexeme.equals(expr.name.lexeme) &&
+                        variable.depth == expr.depth && variable.slot == expr.slot) {
+                    return new Expr.Increment(variable, binary.operator,
+                        (double)((Expr.Literal)binary.right).value);
+                }
+            }
+        }
+
+        if (value == expr.value) return expr;
+        Expr.Assign optimized = new Expr.Assign(expr.name, value);
+        optimized.depth = expr.depth;
+        optimized.slot = expr.slot;
+        return optimized;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                boolean negated = expr.operator.type == TokenType.BANG_EQUAL;
+                if (isNil(right)) return new Expr.IsNil(left, negated);
+                if (isNil(left)) return new Expr.IsNil(right, negated);
+                break;
+
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (left instanceof Expr.Variable && isNumber(right)) {
+                    return new Expr.CompareConstant((Expr.Variable)left, expr.operator,
+                        (double)((Expr.Literal)right).value);
+                }
+                if (left instanceof Expr.Variable && right instanceof Expr.Variable) {
+                    return new Expr.CompareVariables((Expr.Variable)left, expr.operator,
+                        (Expr.Variable)right);
+                }
+                break;
+        }
+
+        // a * b
+        switch (expr.operator.type) {
+            case MINUS:
+            case PLUS:
+            case SLASH:
+            case STAR:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                if (types.isNumber(expr.left) && types.isNumber(expr.right)) {
+                    return new Expr.NumberBinary(left, expr.operator, right);
+                }
+                break;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = optimizeAll(expr.arguments);
+
+        Expr.Call call = callee == expr.callee && arguments == expr.arguments
+            ? expr
+            : new Expr.Call(callee, expr.paren, arguments);
+
+        // a.b(x)
+        if (callee instanceof Expr.Get) {
+            Expr.Get method = (Expr.Get)callee;
+            Expr.Invoke invoke = new Expr.Invoke(method, call);
+            if (hierarchy != null) {
+                invoke.target = hierarchy.target(method.name.lexeme);
+                invoke.fieldless = !hierarchy.mayHaveField(method.name.lexeme);
+                if (invoke.target != null) invoke.body = inline(invoke.target, true, arguments.size());
+            }
+            return invoke;
+        }
+
+        // super.b(x)
+        if (callee instanceof Expr.Super) {
+            return new Expr.SuperInvoke((Expr.Super)callee, call);
+        }
+
+        // f(x)
+        if (callee instanceof Expr.Variable && ((Expr.Variable)callee).depth == -1) {
+            Stmt.Function function = functions.get(((Expr.Variable)callee).name.lexeme);
+            Expr body = function == null ? null : inline(function, false, arguments.size());
+            if (body != null) return new Expr.Inline(call, function, body);
+        }
+
+        return call;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+
+        if (object == expr.object) return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+
+        if (expression == expr.expression) return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+
+        // a.b = a.b + x
+        if (value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)value;
+            switch (binary.operator.type) {
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    if (binary.left instanceof Expr.Get) {
+                        Expr.Get field = (Expr.Get)binary.left;
+                        if (field.name.lexeme.equals(expr.name.lexeme) && sameVariable(object, field.object)) {
+                            return new Expr.UpdateField(field, expr.name, binary.operator, binary.right);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    // Superinstructions are only created by this pass, which never sees them again
+
+    @Override
+    public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCompareVariablesExpr(Expr.CompareVariables expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitIsNilExpr(Expr.IsNil expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUpdateFieldExpr(Expr.UpdateField expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitInvokeExpr(Expr.Invoke expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitInlineExpr(Expr.Inline expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitNumberBinaryExpr(Expr.NumberBinary expr) {
+        return expr;
+    }
+
+    // Only found in the copies the Inliner makes, which read nothing else
+
+    @Override
+    public Expr visitArgumentExpr(Expr.Argument expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = optimizeStatements(stmt.statements);
+
+        if (statements == stmt.statements) return stmt;
+        Stmt.Block optimized = new Stmt.Block(statements);
+        optimized.yields = stmt.yields;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        List<Stmt.Function> methods = null;
+        for (int i = 0; i < stmt.methods.size(); i++) {
+            Stmt.Function method = stmt.methods.get(i);
+            Stmt.Function replacement = (Stmt.Function)optimize(method);
+            if (replacement != method && methods == null) {
+                methods = new ArrayList<>(stmt.methods.subList(0, i));
+            }
+            if (methods != null) methods.add(replacement);
+        }
+
+        if (methods == null) return stmt;
+        return new Stmt.Class(stmt.name, stmt.superclass, methods);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        enclosing.add(stmt);
+        List<Stmt> body = optimizeStatements(stmt.body);
+        enclosing.remove(stmt);
+
+        if (body == stmt.body) return stmt;
+        Stmt.Function optimized = new Stmt.Function(stmt.name, stmt.params, body);
+        optimized.generator = stmt.generator;
+        optimized.variables = stmt.variables;
+        optimized.fields = stmt.fields;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        Stmt elseBranch = optimize(stmt.elseBranch);
+
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch &&
+                elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        Stmt.If optimized = new Stmt.If(condition, thenBranch, elseBranch);
+        optimized.yields = stmt.yields;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = optimize(stmt.value);
+
+        if (value == stmt.value) return stmt;
+        return new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer);
+
+        if (initializer == stmt.initializer) return stmt;
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        Stmt body = optimize(stmt.body);
+
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        Stmt.While optimized = new Stmt.While(stmt.keyword, condition, body);
+        optimized.yields = stmt.yields;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitYieldStmt(Stmt.Yield stmt) {
+        Expr value = optimize(stmt.value);
+
+        if (value == stmt.value) return stmt;
+        return new Stmt.Yield(stmt.keyword, value);
+    }
+}
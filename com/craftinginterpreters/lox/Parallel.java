@@ -0,0 +1,193 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The natives that spread the iterations of a loop across the cores of the
+ * machine, through the common ForkJoinPool:
+ *
+ * <pre>
+ * parallelFor(start, end, fn)             // calls fn(i) for i from start to end - 1
+ * parallelReduce(start, end, fn, combine) // combines the fn(i) with combine(a, b)
+ * </pre>
+ *
+ * Lox has no lists to map over, so parallelReduce takes the place of a
+ * parallel map: fn computes one value per index and combine, which must be
+ * associative, folds them together in index order. It returns nil when the
+ * range is empty.
+ *
+ * The range is split into a few chunks per thread, each run by a worker
+ * interpreter of its own (see Interpreter.worker()), so the iterations of a
+ * chunk run one after the other and those of different chunks run in
+ * parallel. Workers read the globals through a copy-on-write fork; a worker
+ * assigning a global is detected once the loop is over and raised as a
+ * runtime error, since the assignment would otherwise be lost. Under a
+ * budget, the workers spend the budget of the script together.
+ *
+ * Other shared state is not protected. Variables captured from enclosing
+ * functions and the fields of instances are the same objects in every
+ * worker, so assigning them from fn is a data race, except for the fields of
+ * instances of shareable classes (see LoxClass). Otherwise, pass values in
+ * through the index and get results out through parallelReduce.
+ */
+final class Parallel {
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private Parallel() {}
+
+    static void define(Environment globals) {
+        globals.define("parallelFor", new ParallelFor());
+        globals.define("parallelReduce", new ParallelReduce());
+    }
+
+    /**
+     * What a chunk does with its part of the range.
+     */
+    private interface Body {
+        Object run(Interpreter worker, long from, long to);
+    }
+
+    private static class Chunk extends RecursiveTask<Object> {
+        private final Interpreter worker;
+        private final long from;
+        private final long to;
+        private final Body body;
+
+        Chunk(Interpreter worker, long from, long to, Body body) {
+            this.worker = worker;
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected Object compute() {
+            Object result = body.run(worker, from, to);
+            worker.runEventLoop();
+            return result;
+        }
+    }
+
+    /**
+     * Runs the body over the range split into chunks, waiting for every
+     * chunk to finish even if one fails.
+     *
+     * @return The result of each chunk, in index order.
+     */
+    private static Object[] split(Interpreter interpreter, long from, long to, Body body) {
+        if (to <= from) return new Object[0];
+
+        long count = to - from;
+        int chunks = (int)Math.min(count,
+            (long)ForkJoinPool.commonPool().getParallelism() * CHUNKS_PER_THREAD);
+
+        // The workers fork the globals here, before any of them starts running
+        List<Chunk> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            tasks.add(new Chunk(interpreter.worker(),
+                from + count * i / chunks, from + count * (i + 1) / chunks, body));
+        }
+
+        for (int i = 1; i < chunks; i++) {
+            tasks.get(i).fork();
+        }
+
+        Object[] results = new Object[chunks];
+        RuntimeException failure = null;
+        for (int i = 0; i < chunks; i++) {
+            try {
+                results[i] = i == 0 ? tasks.get(i).invoke() : tasks.get(i).join();
+            } catch (RuntimeException error) {
+                if (failure == null) failure = error;
+            }
+        }
+        if (failure != null) throw failure;
+
+        for (Chunk task : tasks) {
+            Map<String, Object> assigned = task.worker.globals.values();
+            if (!assigned.isEmpty()) {
+                throw new NativeError("Parallel iterations can't assign global variables, but '" +
+                    assigned.keySet().iterator().next() + "' was assigned.");
+            }
+        }
+
+        return results;
+    }
+
+    private static long index(String name, Object value) {
+        if (!(value instanceof Double) || (double)value != Math.floor((double)value)) {
+            throw new NativeError("The range of " + name + " must be whole numbers.");
+        }
+        return (long)(double)value;
+    }
+
+    private static LoxCallable function(String name, Object value, int arity) {
+        // Java methods with overloads of several arities check the number themselves
+        if (!(value instanceof LoxCallable) ||
+                ((LoxCallable)value).arity() >= 0 && ((LoxCallable)value).arity() != arity) {
+            throw new NativeError(name + " expects a function taking " + arity +
+                (arity == 1 ? " argument." : " arguments."));
+        }
+        return (LoxCallable)value;
+    }
+
+    private static class ParallelFor implements LoxCallable {
+        @Override
+        public int arity() { return 3; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            long start = index("parallelFor", arguments.get(0));
+            long end = index("parallelFor", arguments.get(1));
+            LoxCallable fn = function("parallelFor", arguments.get(2), 1);
+
+            Token where = interpreter.lastCall;
+            split(interpreter, start, end, (worker, from, to) -> {
+                for (long i = from; i < to; i++) {
+                    worker.callBack(where, fn, (double)i);
+                }
+                return null;
+            });
+            return null;
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    private static class ParallelReduce implements LoxCallable {
+        @Override
+        public int arity() { return 4; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            long start = index("parallelReduce", arguments.get(0));
+            long end = index("parallelReduce", arguments.get(1));
+            LoxCallable fn = function("parallelReduce", arguments.get(2), 1);
+            LoxCallable combine = function("parallelReduce", arguments.get(3), 2);
+
+            Token where = interpreter.lastCall;
+            Object[] results = split(interpreter, start, end, (worker, from, to) -> {
+                Object result = worker.callBack(where, fn, (double)from);
+                for (long i = from + 1; i < to; i++) {
+                    result = worker.callBack(where, combine, result, worker.callBack(where, fn, (double)i));
+                }
+                return result;
+            });
+
+            if (results.length == 0) return null;
+            Object result = results[0];
+            for (int i = 1; i < results.length; i++) {
+                result = interpreter.callBack(where, combine, result, results[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+}
@@ -9,10 +9,12 @@ class Parser {
     private static class ParseError extends RuntimeException {}
 
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
     private int current = 0;
 
-    Parser(List<Token> tokens) {
+    Parser(List<Token> tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -94,6 +96,7 @@ class Parser {
         if (match(PRINT)) return printStatement();
         if (match(RETURN)) return returnStatement();
         if (match(WHILE)) return whileStatement();
+        if (match(YIELD)) return yieldStatement();
         if (match(LEFT_BRACE)) return new Stmt.Block(block());
 
         return expressionStatement();
@@ -101,6 +104,7 @@ class Parser {
 
     // desugaring for to while
     private Stmt forStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -135,7 +139,7 @@ class Parser {
         }
 
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -181,6 +185,15 @@ class Parser {
         return new Stmt.Return(keyword, value);
     }
 
+    // yieldStmt -> "yield" expression ";"
+    private Stmt yieldStatement() {
+        Token keyword = previous();
+        Expr value = expression();
+
+        consume(SEMICOLON, "Expect ';' after yield value.");
+        return new Stmt.Yield(keyword, value);
+    }
+
     // varDeclaration -> "var" IDENTIFIER ( "=" expression ) ";" ; 
     private Stmt varDeclaration() {
         Token name = consume(IDENTIFIER, "Expect variable");
@@ -196,12 +209,13 @@ class Parser {
 
     // whileStmt -> "while" "(" expression ")" statement ;
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     // expression statement -> expression ";"
@@ -502,7 +516,7 @@ class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -529,6 +543,7 @@ class Parser {
                 case WHILE:
                 case PRINT:
                 case RETURN:
+                case YIELD:
                     return;
             }
 
@@ -0,0 +1,492 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An interpreter that counts how many times every expression is evaluated and
+ * every statement is executed, and how long each statement takes. It also
+ * keeps track of the line and function being run, which subclasses use to
+ * attribute other events to the source.
+ *
+ * It is only instantiated when profiling is requested, so the plain
+ * Interpreter keeps its evaluate/execute calls monomorphic and pays nothing
+ * for the instrumentation when it is off.
+ */
+class ProfilingInterpreter extends Interpreter {
+    private final Map<Object, NodeStats> stats = new IdentityHashMap<>();
+    private final Map<List<Stmt>, String> functions = new IdentityHashMap<>();
+
+    // Time spent in the statements nested in the one currently running
+    private long childNanos = 0;
+
+    // Where the interpreter currently is, for subclasses attributing events to the source
+    int currentLine = 0;
+    String currentFunction = "<script>";
+
+    ProfilingInterpreter(ErrorReporter reporter) {
+        super(reporter);
+    }
+
+    private static class NodeStats {
+        final int line;
+        final boolean isStmt;
+        long count = 0;
+        long selfNanos = 0;
+
+        NodeStats(int line, boolean isStmt) {
+            this.line = line;
+            this.isStmt = isStmt;
+        }
+    }
+
+    private static class LineStats {
+        long stmts = 0;
+        long exprs = 0;
+        long selfNanos = 0;
+        boolean hasCode = false;
+        boolean executed = false;
+    }
+
+    /**
+     * Registers every node of the given statements before they run, so that
+     * each one knows its source line and nodes that never execute still
+     * show up in the report as uncovered.
+     *
+     * @param statements The statements about to be interpreted.
+     */
+    void register(List<Stmt> statements) {
+        Registrar registrar = new Registrar();
+        for (Stmt statement : statements) {
+            registrar.register(statement, 0);
+        }
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        NodeStats node = stats.get(expr);
+        int enclosingLine = currentLine;
+        if (node != null) {
+            node.count++;
+            currentLine = node.line;
+        }
+
+        try {
+            return super.evaluate(expr);
+        } finally {
+            currentLine = enclosingLine;
+        }
+    }
+
+    // Operands are evaluated one by one, even nested arithmetic, so that each is counted
+    @Override
+    double numeric(Expr expr) {
+        return (double)evaluate(expr);
+    }
+
+    @Override
+    void execute(Stmt stmt) {
+        NodeStats node = stats.get(stmt);
+        int enclosingLine = currentLine;
+        if (node != null) currentLine = node.line;
+
+        long enclosingChildNanos = childNanos;
+        childNanos = 0;
+        long start = System.nanoTime();
+
+        try {
+            super.execute(stmt);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (node != null) {
+                node.count++;
+                node.selfNanos += elapsed - childNanos;
+            }
+            childNanos = enclosingChildNanos + elapsed;
+            currentLine = enclosingLine;
+        }
+    }
+
+    @Override
+    void executeBlock(List<Stmt> statements, Environment environment) {
+        // Function bodies are the only blocks run this way that were registered by name
+        String function = functions.get(statements);
+        if (function == null) {
+            super.executeBlock(statements, environment);
+            return;
+        }
+
+        String enclosingFunction = currentFunction;
+        currentFunction = function;
+        try {
+            super.executeBlock(statements, environment);
+        } finally {
+            currentFunction = enclosingFunction;
+        }
+    }
+
+    /**
+     * Prints the source annotated with the counters gathered so far, followed
+     * by the lines where the most time was spent. Lines with code that never
+     * ran are marked with "#####", lines with no code at all with "-".
+     *
+     * @param source The source code that was run.
+     * @param out The stream to print the report to.
+     */
+    void report(String source, PrintStream out) {
+        Map<Integer, LineStats> lines = new TreeMap<>();
+        long totalNanos = 0;
+
+        for (NodeStats node : stats.values()) {
+            LineStats line = lines.computeIfAbsent(node.line, l -> new LineStats());
+            line.hasCode = true;
+            if (node.count > 0) line.executed = true;
+
+            if (node.isStmt) {
+                line.stmts += node.count;
+                line.selfNanos += node.selfNanos;
+                totalNanos += node.selfNanos;
+            } else {
+                line.exprs += node.count;
+            }
+        }
+
+        String[] text = source.split("\r?\n", -1);
+
+        out.println();
+        out.println("=== Profile ===");
+        out.printf("%6s %12s %12s %10s  %s%n", "line", "stmts", "exprs", "self ms", "source");
+        for (int i = 1; i <= text.length; i++) {
+            LineStats line = lines.get(i);
+            if (line == null || !line.hasCode) {
+                out.printf("%6d %12s %12s %10s  %s%n", i, "-", "-", "", text[i - 1]);
+            } else if (!line.executed) {
+                out.printf("%6d %12s %12s %10s  %s%n", i, "#####", "#####", "", text[i - 1]);
+            } else {
+                out.printf("%6d %12d %12d %10.3f  %s%n",
+                    i, line.stmts, line.exprs, line.selfNanos / 1e6, text[i - 1]);
+            }
+        }
+
+        // Line 0 gathers the few nodes no token could place, such as a lone literal
+        List<Map.Entry<Integer, LineStats>> hot = new ArrayList<>(lines.entrySet());
+        hot.removeIf(entry -> entry.getKey() == 0);
+        hot.sort((a, b) -> Long.compare(b.getValue().selfNanos, a.getValue().selfNanos));
+
+        int covered = 0;
+        int withCode = 0;
+        for (Map.Entry<Integer, LineStats> entry : lines.entrySet()) {
+            if (entry.getKey() == 0) continue;
+
+            withCode++;
+            if (entry.getValue().executed) covered++;
+        }
+
+        out.println();
+        out.println("=== Hottest lines ===");
+        for (int i = 0; i < hot.size() && i < 10; i++) {
+            Map.Entry<Integer, LineStats> entry = hot.get(i);
+            if (entry.getValue().selfNanos == 0) break;
+
+            int number = entry.getKey();
+            String code = number <= text.length ? text[number - 1].trim() : "";
+            double percent = totalNanos == 0 ? 0 : 100.0 * entry.getValue().selfNanos / totalNanos;
+            out.printf("%6d %10.3f ms %6.2f%%  %s%n", number, entry.getValue().selfNanos / 1e6, percent, code);
+        }
+
+        out.println();
+        out.printf("Coverage: %d of %d lines with code executed.%n", covered, withCode);
+    }
+
+    /**
+     * Walks the whole tree once, creating the counters of every node. Nodes
+     * that carry no token of their own (literals, groupings, blocks...) take
+     * the line of their nearest ancestor or first child that has one.
+     */
+    private class Registrar implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private int line = 0;
+
+        void register(Stmt stmt, int fallback) {
+            if (stmt == null) return;
+
+            int enclosing = line;
+            line = fallback;
+            stmt.accept(this);
+            line = enclosing;
+        }
+
+        void register(Expr expr, int fallback) {
+            if (expr == null) return;
+
+            int enclosing = line;
+            line = fallback;
+            expr.accept(this);
+            line = enclosing;
+        }
+
+        private void node(Object node, boolean isStmt, int at) {
+            line = at;
+            stats.putIfAbsent(node, new NodeStats(at, isStmt));
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            node(expr, false, expr.name.line);
+            register(expr.value, line);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            node(expr, false, expr.operator.line);
+            register(expr.left, line);
+            register(expr.right, line);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            node(expr, false, expr.paren.line);
+            register(expr.callee, line);
+            for (Expr argument : expr.arguments) {
+                register(argument, line);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            node(expr, false, expr.name.line);
+            register(expr.object, line);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            node(expr, false, line);
+            register(expr.expression, line);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            node(expr, false, line);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            node(expr, false, expr.operator.line);
+            register(expr.left, line);
+            register(expr.right, line);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            node(expr, false, expr.name.line);
+            register(expr.object, line);
+            register(expr.value, line);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            node(expr, false, expr.keyword.line);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            node(expr, false, expr.keyword.line);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            node(expr, false, expr.operator.line);
+            register(expr.right, line);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            node(expr, false, expr.name.line);
+            return null;
+        }
+
+        @Override
+        public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+            node(expr, false, expr.operator.line);
+            return null;
+        }
+
+        @Override
+        public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+            node(expr, false, expr.operator.line);
+            return null;
+        }
+
+        @Override
+        public Void visitIncrementExpr(Expr.Increment expr) {
+            node(expr, false, expr.variable.name.line);
+            return null;
+        }
+
+        @Override
+        public Void visitIsNilExpr(Expr.IsNil expr) {
+            node(expr, false, line);
+            register(expr.operand, line);
+            return null;
+        }
+
+        @Override
+        public Void visitUpdateFieldExpr(Expr.UpdateField expr) {
+            node(expr, false, expr.name.line);
+            register(expr.field.object, line);
+            register(expr.value, line);
+            return null;
+        }
+
+        @Override
+        public Void visitInvokeExpr(Expr.Invoke expr) {
+            node(expr, false, expr.call.paren.line);
+            register(expr.method.object, line);
+            for (Expr argument : expr.call.arguments) {
+                register(argument, line);
+            }
+            register(expr.body, line);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+            node(expr, false, expr.call.paren.line);
+            for (Expr argument : expr.call.arguments) {
+                register(argument, line);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitInlineExpr(Expr.Inline expr) {
+            node(expr, false, expr.call.paren.line);
+            register(expr.call.callee, line);
+            for (Expr argument : expr.call.arguments) {
+                register(argument, line);
+            }
+            register(expr.body, line);
+            return null;
+        }
+
+        @Override
+        public Void visitArgumentExpr(Expr.Argument expr) {
+            node(expr, false, expr.name.line);
+            return null;
+        }
+
+        @Override
+        public Void visitNumberBinaryExpr(Expr.NumberBinary expr) {
+            node(expr, false, expr.operator.line);
+            register(expr.left, line);
+            register(expr.right, line);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            // A block has no token; the line of its first statement stands in for it
+            int at = -1;
+            for (Stmt statement : stmt.statements) {
+                register(statement, line);
+                if (at == -1 && stats.containsKey(statement)) {
+                    at = stats.get(statement).line;
+                }
+            }
+            if (at == -1) at = line;
+            node(stmt, true, at);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            node(stmt, true, stmt.name.line);
+            register(stmt.superclass, line);
+
+            // Methods are never executed as statements, only their bodies are
+            for (Stmt.Function method : stmt.methods) {
+                functions.put(method.body, stmt.name.lexeme + "." + method.name.lexeme);
+                for (Stmt statement : method.body) {
+                    register(statement, method.name.line);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            register(stmt.expression, line);
+            node(stmt, true, stats.get(stmt.expression).line);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            node(stmt, true, stmt.name.line);
+            functions.put(stmt.body, stmt.name.lexeme);
+            for (Stmt statement : stmt.body) {
+                register(statement, line);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            register(stmt.condition, line);
+            node(stmt, true, stats.get(stmt.condition).line);
+            register(stmt.thenBranch, line);
+            register(stmt.elseBranch, line);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            register(stmt.expression, line);
+            node(stmt, true, stats.get(stmt.expression).line);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            node(stmt, true, stmt.keyword.line);
+            register(stmt.value, line);
+            return null;
+        }
+
+        @Override
+        public Void visitYieldStmt(Stmt.Yield stmt) {
+            node(stmt, true, stmt.keyword.line);
+            register(stmt.value, line);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            node(stmt, true, stmt.name.line);
+            register(stmt.initializer, line);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            register(stmt.condition, line);
+            node(stmt, true, stats.get(stmt.condition).line);
+            register(stmt.body, line);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The eventual result of an asynchronous operation, such as delay(ms) or an
+ * async function defined by the host:
+ *
+ * <pre>
+ * promise.then(fn) // calls fn(result) on the event loop once there is one,
+ *                  // and returns a promise of what fn returns
+ * </pre>
+ *
+ * If fn returns a promise, the promise returned by then() settles with the
+ * result of that one, so asynchronous steps can be chained. A failed
+ * operation raises a runtime error at the then() waiting for it.
+ *
+ * A promise belongs to the event loop of the interpreter that created it:
+ * its callbacks run there, and it must only be used from that interpreter.
+ * Operations running on other threads complete it through the loop's
+ * inbox, never directly.
+ */
+final class Promise extends NativeObject {
+    private final EventLoop loop;
+    private boolean settled = false;
+    private Object value;
+    private String failure; // set instead of value when the operation failed
+    private final List<Runnable> reactions = new ArrayList<>();
+
+    Promise(EventLoop loop) {
+        this.loop = loop;
+    }
+
+    void resolve(Object value) {
+        if (settled) return;
+
+        if (value instanceof Promise) {
+            Promise other = (Promise)value;
+            other.whenSettled(() -> {
+                if (other.failure != null) {
+                    reject(other.failure);
+                } else {
+                    resolve(other.value);
+                }
+            });
+            return;
+        }
+
+        settle(value, null);
+    }
+
+    void reject(String failure) {
+        if (!settled) settle(null, failure);
+    }
+
+    private void settle(Object value, String failure) {
+        settled = true;
+        this.value = value;
+        this.failure = failure;
+        for (Runnable reaction : reactions) {
+            loop.enqueue(reaction);
+        }
+        reactions.clear();
+    }
+
+    private void whenSettled(Runnable reaction) {
+        if (settled) {
+            loop.enqueue(reaction);
+        } else {
+            reactions.add(reaction);
+        }
+    }
+
+    @Override
+    LoxCallable method(Token name) {
+        if (!name.lexeme.equals("then")) return null;
+
+        return new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof LoxCallable) ||
+                        ((LoxCallable)arguments.get(0)).arity() >= 0 &&
+                        ((LoxCallable)arguments.get(0)).arity() != 1) {
+                    throw new NativeError("then expects a function taking one argument.");
+                }
+                LoxCallable fn = (LoxCallable)arguments.get(0);
+
+                Promise next = new Promise(loop);
+                whenSettled(() -> {
+                    if (failure != null) throw new RuntimeError(name, failure);
+                    next.resolve(loop.interpreter.callBack(name, fn, value));
+                });
+                return next;
+            }
+
+            @Override
+            public String toString() { return "<native fn then>"; }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<promise>";
+    }
+}
@@ -1,17 +1,31 @@
 package com.craftinginterpreters.lox;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
+    private final ErrorReporter reporter;
+    private final GlobalEnvironment.Slots slots;
     private final Stack<Map<String, Boolean>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    private boolean yielded = false; // whether the statement being resolved contains a yield so far
+    private Token valueReturn = null; // the first return with a value in the current function
+    private Set<String> initializerFields = null; // the fields assigned on this, when resolving an initializer
+    private final ClassHierarchy hierarchy = new ClassHierarchy();
+    private int nodes = 0;
+    private int resolvedLocals = 0;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    /**
+     * Creates a resolver giving globals their slots in the given table,
+     * which must be the one of the interpreters that will run the code.
+     */
+    Resolver(ErrorReporter reporter, GlobalEnvironment.Slots slots) {
+        this.reporter = reporter;
+        this.slots = slots;
     }
 
     private enum FunctionType {
@@ -42,6 +56,28 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
     }
 
+    /**
+     * Returns how many AST nodes have been resolved so far.
+     */
+    int nodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Returns how many variable references have been resolved to a local scope so far.
+     */
+    int resolvedLocalCount() {
+        return resolvedLocals;
+    }
+
+    /**
+     * Returns the classes resolved so far, which describe the whole
+     * program once it has all been resolved.
+     */
+    ClassHierarchy hierarchy() {
+        return hierarchy;
+    }
+
     /**
      * Resolves a function, which means declaring each of its parameters
      * and resolving its body.
@@ -50,7 +86,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      */
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
+        boolean enclosingYielded = yielded;
+        Token enclosingValueReturn = valueReturn;
+        Set<String> enclosingInitializerFields = initializerFields;
         currentFunction = type;
+        yielded = false;
+        valueReturn = null;
+        initializerFields = type == FunctionType.INITIALIZER ? new HashSet<>() : null;
 
         beginScope();
         for (Token param : function.params) {
@@ -58,8 +100,20 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             define(param);
         }
         resolve(function.body);
+        function.variables = scopes.peek().size();
         endScope();
+
+        // A function is a generator if it yields anywhere in its own body
+        function.generator = yielded;
+        if (yielded && valueReturn != null) {
+            reporter.error(valueReturn, "Can't return a value from a generator.");
+        }
+        if (initializerFields != null) function.fields = initializerFields.size();
+
         currentFunction = enclosingFunction;
+        yielded = enclosingYielded;
+        valueReturn = enclosingValueReturn;
+        initializerFields = enclosingInitializerFields;
     }
 
     /**
@@ -92,7 +146,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         Map<String, Boolean> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Already a variable with this name in this scope.");
+            reporter.error(name, "Already a variable with this name in this scope.");
         }
         scope.put(name.lexeme, false);
     }
@@ -116,19 +170,24 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      * Resolves a variable in the current scope chain by finding the
      * innermost scope that contains the variable and then resolving
      * the variable to the distance from the current scope to the
-     * innermost scope.
+     * innermost scope. The caller stores that distance on the node,
+     * so the resolved tree carries everything the interpreter needs
+     * and can be shared by interpreters on other threads.
      *
-     * @param expr The expression containing the variable to resolve.
      * @param name The token representing the name of the variable to
      *             resolve.
+     * @return The distance to the scope declaring the variable, or -1
+     *         if it is not declared in any local scope (a global).
      */
-    private void resolveLocal(Expr expr, Token name) {
+    private int resolveLocal(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+                resolvedLocals++;
+                return scopes.size() - 1 - i;
             }
         }
+
+        return -1;
     }
 
     /**
@@ -141,9 +200,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      */
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        boolean enclosingYielded = yielded;
+        yielded = false;
         beginScope();
         resolve(stmt.statements);
         endScope();
+        stmt.yields = yielded;
+        yielded |= enclosingYielded;
 
         return null;
     }
@@ -164,10 +227,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         declare(stmt.name);
         define(stmt.name);
+        hierarchy.declare(stmt);
 
         if (stmt.superclass != null &&
             stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-                Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+                reporter.error(stmt.superclass.name, "A class can't inherit from itself.");
             }
 
         if (stmt.superclass != null) {
@@ -184,6 +248,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         scopes.peek().put("this", true);
 
         for (Stmt.Function method : stmt.methods) {
+            nodes++;
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init")) {
                 declaration = FunctionType.INITIALIZER;
@@ -237,9 +302,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      */
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
+        boolean enclosingYielded = yielded;
+        yielded = false;
         resolve(stmt.condition);
         resolve(stmt.thenBranch);
         if (stmt.elseBranch != null) resolve(stmt.elseBranch);
+        stmt.yields = yielded;
+        yielded |= enclosingYielded;
         return null;
     }
 
@@ -267,13 +336,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Can't return from top-level code.");
+            reporter.error(stmt.keyword, "Can't return from top-level code.");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(stmt.keyword, "Can't return a value from an initializer.");
+                reporter.error(stmt.keyword, "Can't return a value from an initializer.");
             }
+            if (valueReturn == null) valueReturn = stmt.keyword;
 
             resolve(stmt.value);
         }
@@ -308,8 +378,33 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      */
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
+        boolean enclosingYielded = yielded;
+        yielded = false;
         resolve(stmt.condition);
         resolve(stmt.body);
+        stmt.yields = yielded;
+        yielded |= enclosingYielded;
+        return null;
+    }
+
+    /**
+     * Visits a yield statement, which turns the function it is in into a
+     * generator, resolving the value it yields.
+     *
+     * @param stmt The yield statement to visit.
+     * @return Always returns null.
+     */
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        if (currentFunction == FunctionType.NONE) {
+            reporter.error(stmt.keyword, "Can't yield from top-level code.");
+        }
+        if (currentFunction == FunctionType.INITIALIZER) {
+            reporter.error(stmt.keyword, "Can't yield from an initializer.");
+        }
+
+        resolve(stmt.value);
+        yielded = true;
         return null;
     }
 
@@ -324,7 +419,74 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.depth = resolveLocal(expr.name);
+        if (expr.depth == -1) expr.slot = slots.slot(expr.name.lexeme);
+        return null;
+    }
+
+    // The Optimizer only creates superinstructions once the resolver is
+    // done, so these are never visited; they resolve their parts all the same.
+
+    @Override
+    public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+        resolve(expr.left);
+        return null;
+    }
+
+    @Override
+    public Void visitCompareVariablesExpr(Expr.CompareVariables expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitIncrementExpr(Expr.Increment expr) {
+        resolve(expr.variable);
+        return null;
+    }
+
+    @Override
+    public Void visitIsNilExpr(Expr.IsNil expr) {
+        resolve(expr.operand);
+        return null;
+    }
+
+    @Override
+    public Void visitInvokeExpr(Expr.Invoke expr) {
+        resolve(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+        resolve(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) {
+        resolve(expr.call);
+        return null;
+    }
+
+    @Override
+    public Void visitArgumentExpr(Expr.Argument expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitNumberBinaryExpr(Expr.NumberBinary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUpdateFieldExpr(Expr.UpdateField expr) {
+        resolve(expr.value);
+        resolve(expr.field);
+        hierarchy.assign(expr.name.lexeme);
         return null;
     }
 
@@ -426,6 +588,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitSetExpr(Expr.Set expr) {
         resolve(expr.value);
         resolve(expr.object);
+
+        hierarchy.assign(expr.name.lexeme);
+        // Only the initializer's own body counts, not the functions declared in it
+        if (initializerFields != null && expr.object instanceof Expr.This) {
+            initializerFields.add(expr.name.lexeme);
+        }
         return null;
     }
 
@@ -440,11 +608,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+            reporter.error(expr.keyword, "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+            reporter.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
-        resolveLocal(expr, expr.keyword);
+        expr.depth = resolveLocal(expr.keyword);
         return null;
     }
 
@@ -459,10 +627,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+            reporter.error(expr.keyword, "Can't use 'this' outside of a class.");
         }
 
-        resolveLocal(expr, expr.keyword);
+        expr.depth = resolveLocal(expr.keyword);
         return null;
     }
 
@@ -491,10 +659,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitVariableExpr(Expr.Variable expr) {
         if (!scopes.isEmpty() &&
             scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer");
+            reporter.error(expr.name, "Can't read local variable in its own initializer");
         }
 
-        resolveLocal(expr, expr.name);
+        expr.depth = resolveLocal(expr.name);
+        if (expr.depth == -1) expr.slot = slots.slot(expr.name.lexeme);
         return null;
     }
 
@@ -505,6 +674,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      * @param stmt The statement to resolve.
      */
     private void resolve(Stmt stmt) {
+        nodes++;
         stmt.accept(this);
     }
 
@@ -515,6 +685,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
      * @param expr The expression to resolve.
      */
     private void resolve(Expr expr) {
+        nodes++;
         expr.accept(this);
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import static com.craftinginterpreters.lox.TokenType.*;
 
 class Scanner {
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
@@ -33,10 +34,12 @@ class Scanner {
         keywords.put("true", TRUE);
         keywords.put("var", VAR);
         keywords.put("while", WHILE);
+        keywords.put("yield", YIELD);
     }
 
-    Scanner(String source) {
+    Scanner(String source, ErrorReporter reporter) {
         this.source = source;
+        this.reporter = reporter;
     }
 
     List<Token> scanTokens() {
@@ -113,7 +116,7 @@ class Scanner {
                 else if (isAlpha(c)) {
                     identifier();
                 }
-                else Lox.error(line, "Unexpected character.");
+                else reporter.error(line, "Unexpected character.");
                 break;
         }
     }
@@ -148,7 +151,7 @@ class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line,  "Unterminated string.");
+            reporter.error(line,  "Unterminated string.");
             return;
         }
 
@@ -14,6 +14,7 @@ abstract class Stmt {
 		R visitReturnStmt(Return stmt);
 		R visitVarStmt(Var stmt);
 		R visitWhileStmt(While stmt);
+		R visitYieldStmt(Yield stmt);
 	}
 
 	static class Function extends Stmt {
@@ -31,6 +32,9 @@ abstract class Stmt {
 		final Token name;
 		final List<Token> params;
 		final List<Stmt> body;
+		boolean generator = false;
+		int variables = 0;
+		int fields = 0;
 	}
 
 	static class If extends Stmt {
@@ -48,6 +52,7 @@ abstract class Stmt {
 		final Expr condition;
 		final Stmt thenBranch;
 		final Stmt elseBranch;
+		boolean yields = false;
 	}
 
 	static class Block extends Stmt {
@@ -61,6 +66,7 @@ abstract class Stmt {
 		}
 
 		final List<Stmt> statements;
+		boolean yields = false;
 	}
 
 	static class Class extends Stmt {
@@ -137,7 +143,8 @@ abstract class Stmt {
 	}
 
 	static class While extends Stmt {
-		While(Expr condition, Stmt body) {
+		While(Token keyword, Expr condition, Stmt body) {
+			this.keyword = keyword;
 			this.condition = condition;
 			this.body = body;
 		}
@@ -147,8 +154,25 @@ abstract class Stmt {
 			return visitor.visitWhileStmt(this);
 		}
 
+		final Token keyword;
 		final Expr condition;
 		final Stmt body;
+		boolean yields = false;
+	}
+
+	static class Yield extends Stmt {
+		Yield(Token keyword, Expr value) {
+			this.keyword = keyword;
+			this.value = value;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitYieldStmt(this);
+		}
+
+		final Token keyword;
+		final Expr value;
 	}
 
 
@@ -0,0 +1,166 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The natives for running Lox functions concurrently:
+ *
+ * <pre>
+ * var task = spawn(fn);          // runs fn() on a thread of its own
+ * task.join();                   // waits for it and returns what it returned
+ * var channel = Channel();       // see Channel
+ * var bounded = BoundedChannel(16);
+ * shareable(Cache);              // lets instances of Cache be shared, see LoxClass
+ * </pre>
+ *
+ * Each task runs in a worker interpreter (see Interpreter.worker()), over a
+ * copy-on-write fork of the spawner's globals. A task that assigns a global
+ * fails, since the assignment would not be seen by anyone else; a task that
+ * fails raises its error again in whoever joins it. Like the natives in
+ * Parallel, tasks share captured variables and instances without any
+ * synchronization: they should communicate through channels, or through
+ * instances of shareable classes.
+ *
+ * Tasks run on virtual threads when the JDK has them, so thousands of them
+ * can wait on channels or I/O cheaply. On older JDKs they fall back to a
+ * pool of platform threads, which works the same but costs a thread per
+ * waiting task. Either way the threads don't keep the JVM alive: tasks
+ * still running when the script ends are abandoned, as are those still
+ * being joined when a script with a time budget runs out of time.
+ */
+final class Tasks {
+    private Tasks() {}
+
+    static void define(Environment globals) {
+        globals.define("spawn", new Spawn());
+        globals.define("Channel", new HostFunction("Channel", 0,
+            arguments -> new Channel(Integer.MAX_VALUE)));
+        globals.define("BoundedChannel", new HostFunction("BoundedChannel", 1,
+            arguments -> new Channel(capacity(arguments.get(0)))));
+        globals.define("shareable", new HostFunction("shareable", 1, arguments -> {
+            if (!(arguments.get(0) instanceof LoxClass)) {
+                throw new NativeError("shareable expects a class.");
+            }
+            LoxClass klass = (LoxClass)arguments.get(0);
+            klass.shareable = true;
+            return klass;
+        }));
+    }
+
+    private static int capacity(Object value) {
+        if (!(value instanceof Double) || (double)value < 1 ||
+                (double)value != Math.floor((double)value) || (double)value > Integer.MAX_VALUE) {
+            throw new NativeError("A channel's capacity must be a positive whole number.");
+        }
+        return (int)(double)value;
+    }
+
+    // Created on the first spawn, so scripts that don't use tasks don't pay for it
+    private static class Executor {
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            try {
+                Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService)virtual.invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // Before JDK 21, or JDK 19 and 20 without --enable-preview
+                return Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "lox-task");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+
+    private static class Spawn implements LoxCallable {
+        @Override
+        public int arity() { return 1; }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            Object fn = arguments.get(0);
+            if (!(fn instanceof LoxCallable) || ((LoxCallable)fn).arity() > 0) {
+                throw new NativeError("spawn expects a function taking no arguments.");
+            }
+
+            // Forked here, on the spawner's thread, before the task starts
+            Interpreter worker = interpreter.worker();
+            return new Task(CompletableFuture.supplyAsync(() -> {
+                Object result = ((LoxCallable)fn).call0(worker);
+                worker.runEventLoop();
+
+                Map<String, Object> assigned = worker.globals.values();
+                if (!assigned.isEmpty()) {
+                    throw new NativeError("Tasks can't assign global variables, but '" +
+                        assigned.keySet().iterator().next() + "' was assigned.");
+                }
+                return result;
+            }, Executor.INSTANCE));
+        }
+
+        @Override
+        public String toString() { return "<native fn>"; }
+    }
+
+    private static class Task extends NativeObject {
+        private final CompletableFuture<Object> result;
+        // Given the interpreter, for its time budget
+        private final LoxCallable join = new LoxCallable() {
+            @Override
+            public int arity() { return 0; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return join(interpreter);
+            }
+
+            @Override
+            public String toString() { return "<native fn join>"; }
+        };
+
+        Task(CompletableFuture<Object> result) {
+            this.result = result;
+        }
+
+        @Override
+        LoxCallable method(Token name) {
+            return name.lexeme.equals("join") ? join : null;
+        }
+
+        private Object join(Interpreter interpreter) {
+            try {
+                while (true) {
+                    long timeLeft = interpreter.timeLeft();
+                    if (timeLeft <= 0) interpreter.timeRanOut();
+                    try {
+                        return result.get(timeLeft, TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        // Check the time left again
+                    }
+                }
+            } catch (ExecutionException e) {
+                // Raised again as it was, so that it still points at the line in the task
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                throw new NativeError("Task failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NativeError("Interrupted while joining a task.");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "<task>";
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures how much wall time, CPU time and heap each phase of a run takes
+ * on the current thread, for the --timings report.
+ *
+ * CPU time and allocated bytes come from the platform ThreadMXBean. When
+ * the JVM can't provide one of them it is reported as "n/a".
+ */
+class Timings {
+    private final com.sun.management.ThreadMXBean threads;
+    private final boolean cpuTime;
+    private final boolean allocation;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+
+    int tokens = 0;
+    int nodes = 0;
+    int resolvedLocals = 0;
+
+    private static class Phase {
+        long wallNanos = 0;
+        long cpuNanos = 0;
+        long allocatedBytes = 0;
+    }
+
+    Timings() {
+        threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        cpuTime = threads.isCurrentThreadCpuTimeSupported();
+        allocation = threads.isThreadAllocatedMemorySupported();
+
+        if (cpuTime) threads.setThreadCpuTimeEnabled(true);
+        if (allocation) threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Starts measuring a phase. Phases don't nest: each begin() is closed by
+     * the end() that follows it.
+     */
+    void begin() {
+        startAllocated = allocation ? threads.getCurrentThreadAllocatedBytes() : 0;
+        startCpu = cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+        startWall = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the phase started by the last call to begin() and adds
+     * the measurements to those of the previous runs of the same phase.
+     *
+     * @param name The name of the phase.
+     */
+    void end(String name) {
+        long wall = System.nanoTime() - startWall;
+        long cpu = cpuTime ? threads.getCurrentThreadCpuTime() - startCpu : 0;
+        long allocated = allocation ? threads.getCurrentThreadAllocatedBytes() - startAllocated : 0;
+
+        Phase phase = phases.computeIfAbsent(name, n -> new Phase());
+        phase.wallNanos += wall;
+        phase.cpuNanos += cpu;
+        phase.allocatedBytes += allocated;
+    }
+
+    /**
+     * Prints every phase measured since the last reset, with their totals,
+     * and the size of what the front end produced.
+     *
+     * @param out The stream to print the report to.
+     */
+    void report(PrintStream out) {
+        Phase total = new Phase();
+
+        out.println();
+        out.println("=== Timings ===");
+        out.printf("%-10s %12s %12s %14s%n", "phase", "wall ms", "cpu ms", "allocated KB");
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            row(out, entry.getKey(), phase);
+
+            total.wallNanos += phase.wallNanos;
+            total.cpuNanos += phase.cpuNanos;
+            total.allocatedBytes += phase.allocatedBytes;
+        }
+        row(out, "total", total);
+
+        out.println();
+        out.printf("tokens: %d, AST nodes: %d, resolved locals: %d%n", tokens, nodes, resolvedLocals);
+    }
+
+    private void row(PrintStream out, String name, Phase phase) {
+        out.printf("%-10s %12.3f %12s %14s%n",
+            name,
+            phase.wallNanos / 1e6,
+            cpuTime ? String.format("%.3f", phase.cpuNanos / 1e6) : "n/a",
+            allocation ? String.format("%.1f", phase.allocatedBytes / 1024.0) : "n/a");
+    }
+
+    void reset() {
+        phases.clear();
+        tokens = 0;
+        nodes = 0;
+        resolvedLocals = 0;
+    }
+}
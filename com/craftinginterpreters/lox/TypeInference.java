@@ -0,0 +1,409 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proves, before a script runs, which of its expressions always evaluate to
+ * a number, a string, a boolean or nil. The Optimizer uses it to replace the
+ * operators whose operands are always numbers with NumberBinary nodes, which
+ * neither check their operands nor box what they pass each other.
+ *
+ * The inference follows the flow of each function through a resolved tree,
+ * keeping the scopes the resolver kept to tell its local variables apart. A
+ * local has the type of the last value assigned to it; where branches meet,
+ * and each time a loop goes round, it keeps the type both sides agree on, if
+ * any, and loops are walked again until their locals' types stop changing.
+ * Anything whose flow it can't follow is unknown: globals, which other
+ * scripts and the host may assign, fields, parameters, what calls return,
+ * and the variables of enclosing functions, which a closure reads whenever
+ * it is called. A local that a closure assigns is unknown everywhere, since
+ * any call may run the closure; a first walk finds those.
+ *
+ * An expression only has a type if every value it produces has it. One that
+ * raises an error produces no value, so a - b is a number whatever a and b
+ * are, and a + b is a number as soon as either operand is.
+ */
+final class TypeInference implements Expr.Visitor<TypeInference.Type>, Stmt.Visitor<Void> {
+    enum Type {
+        NUMBER, STRING, BOOLEAN, NIL, UNKNOWN;
+
+        /**
+         * Returns the type of a value that has either this type or the other.
+         */
+        Type join(Type other) {
+            return this == other ? this : UNKNOWN;
+        }
+    }
+
+    // A local variable, or the this or super of a class, which have no declaration
+    private static final class Local {
+        final Token declaration;
+        final int function; // how many functions deep it is declared
+        final boolean tracked;
+
+        Local(Token declaration, int function, boolean tracked) {
+            this.declaration = declaration;
+            this.function = function;
+            this.tracked = tracked;
+        }
+    }
+
+    private final Map<Expr, Type> types = new IdentityHashMap<>();
+    private final Set<Token> untracked; // the declarations of the locals closures assign
+    private final Set<Token> assignedByClosures = new HashSet<>();
+
+    private final List<Map<String, Local>> scopes = new ArrayList<>();
+    private Map<Local, Type> locals = new HashMap<>(); // the tracked locals in scope, where the walk is
+    private int function = 0;
+
+    private TypeInference(Set<Token> untracked) {
+        this.untracked = untracked;
+    }
+
+    /**
+     * Infers the types of the expressions of a resolved script.
+     */
+    static TypeInference infer(List<Stmt> statements) {
+        TypeInference first = new TypeInference(new HashSet<>());
+        first.walk(statements);
+
+        TypeInference inference = new TypeInference(first.assignedByClosures);
+        inference.walk(statements);
+        return inference;
+    }
+
+    /**
+     * Returns the type of every value an expression of the script can
+     * evaluate to, or UNKNOWN.
+     */
+    Type type(Expr expr) {
+        return types.getOrDefault(expr, Type.UNKNOWN);
+    }
+
+    boolean isNumber(Expr expr) {
+        return type(expr) == Type.NUMBER;
+    }
+
+    private void walk(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            walk(statement);
+        }
+    }
+
+    private void walk(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    // An expression visited more than once, as in a loop, only keeps the type it always had
+    private Type infer(Expr expr) {
+        Type type = expr.accept(this);
+        types.merge(expr, type, Type::join);
+        return type;
+    }
+
+    /**
+     * Joins the types the walk has reached a point with and the types
+     * another path to the same point had.
+     */
+    private void join(Map<Local, Type> other) {
+        locals.replaceAll((local, type) -> type.join(other.getOrDefault(local, Type.UNKNOWN)));
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        for (Local local : scopes.remove(scopes.size() - 1).values()) {
+            locals.remove(local);
+        }
+    }
+
+    private void declare(Token name, Type type) {
+        if (scopes.isEmpty()) return; // a global
+
+        Local local = new Local(name, function, !untracked.contains(name));
+        scopes.get(scopes.size() - 1).put(name.lexeme, local);
+        if (local.tracked) locals.put(local, type);
+    }
+
+    // The local the resolver found the given distance away, or null
+    private Local local(Token name, int depth) {
+        if (depth < 0 || depth >= scopes.size()) return null;
+        return scopes.get(scopes.size() - 1 - depth).get(name.lexeme);
+    }
+
+    private void function(Stmt.Function declaration) {
+        Map<Local, Type> enclosing = locals;
+        locals = new HashMap<>();
+        function++;
+
+        beginScope();
+        for (Token param : declaration.params) {
+            declare(param, Type.UNKNOWN);
+        }
+        walk(declaration.body);
+        endScope();
+
+        function--;
+        locals = enclosing;
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Type type = infer(expr.value);
+
+        Local local = local(expr.name, expr.depth);
+        if (local != null) {
+            if (local.function != function) {
+                assignedByClosures.add(local.declaration);
+            } else if (local.tracked) {
+                locals.put(local, type);
+            }
+        }
+        return type;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        Type left = infer(expr.left);
+        Type right = infer(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+            case SLASH:
+            case STAR:
+                return Type.NUMBER;
+            case PLUS:
+                if (left == Type.NUMBER || right == Type.NUMBER) return Type.NUMBER;
+                if (left == Type.STRING || right == Type.STRING) return Type.STRING;
+                return Type.UNKNOWN;
+            default:
+                return Type.BOOLEAN; // comparisons and equality
+        }
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        infer(expr.callee);
+        for (Expr argument : expr.arguments) {
+            infer(argument);
+        }
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitGetExpr(Expr.Get expr) {
+        infer(expr.object);
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return infer(expr.expression);
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) return Type.NUMBER;
+        if (expr.value instanceof String) return Type.STRING;
+        if (expr.value instanceof Boolean) return Type.BOOLEAN;
+        return expr.value == null ? Type.NIL : Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        Type left = infer(expr.left);
+
+        // The right operand is only evaluated sometimes
+        Map<Local, Type> skipped = new HashMap<>(locals);
+        Type right = infer(expr.right);
+        join(skipped);
+
+        return left.join(right);
+    }
+
+    @Override
+    public Type visitSetExpr(Expr.Set expr) {
+        infer(expr.object);
+        return infer(expr.value);
+    }
+
+    @Override
+    public Type visitSuperExpr(Expr.Super expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitThisExpr(Expr.This expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        infer(expr.right);
+        return expr.operator.type == TokenType.MINUS ? Type.NUMBER : Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Local local = local(expr.name, expr.depth);
+        if (local == null || !local.tracked || local.function != function) return Type.UNKNOWN;
+        return locals.getOrDefault(local, Type.UNKNOWN);
+    }
+
+    // Only the Optimizer creates these, after the inference has run
+
+    @Override
+    public Type visitCompareConstantExpr(Expr.CompareConstant expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitCompareVariablesExpr(Expr.CompareVariables expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitIncrementExpr(Expr.Increment expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitIsNilExpr(Expr.IsNil expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitUpdateFieldExpr(Expr.UpdateField expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitInvokeExpr(Expr.Invoke expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitSuperInvokeExpr(Expr.SuperInvoke expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitInlineExpr(Expr.Inline expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitArgumentExpr(Expr.Argument expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitNumberBinaryExpr(Expr.NumberBinary expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        walk(stmt.statements);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        declare(stmt.name, Type.UNKNOWN);
+        if (stmt.superclass != null) {
+            infer(stmt.superclass);
+            beginScope();
+            scopes.get(scopes.size() - 1).put("super", new Local(null, function, false));
+        }
+
+        beginScope();
+        scopes.get(scopes.size() - 1).put("this", new Local(null, function, false));
+        for (Stmt.Function method : stmt.methods) {
+            function(method);
+        }
+        endScope();
+
+        if (stmt.superclass != null) endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.name, Type.UNKNOWN);
+        function(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        infer(stmt.condition);
+
+        Map<Local, Type> otherwise = new HashMap<>(locals);
+        walk(stmt.thenBranch);
+        Map<Local, Type> then = locals;
+        locals = otherwise;
+        if (stmt.elseBranch != null) walk(stmt.elseBranch);
+        join(then);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) infer(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Type type = stmt.initializer == null ? Type.NIL : infer(stmt.initializer);
+        declare(stmt.name, type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Map<Local, Type> entry = new HashMap<>(locals);
+        while (true) {
+            infer(stmt.condition);
+            Map<Local, Type> exit = new HashMap<>(locals);
+            walk(stmt.body);
+
+            // Once going round again changes nothing, the types hold on every round
+            join(entry);
+            if (locals.equals(entry)) {
+                locals = exit;
+                return null;
+            }
+            entry = new HashMap<>(locals);
+        }
+    }
+
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        if (stmt.value != null) infer(stmt.value);
+        return null;
+    }
+}
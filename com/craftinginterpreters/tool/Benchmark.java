@@ -0,0 +1,93 @@
+package com.craftinginterpreters.tool;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import com.craftinginterpreters.lox.Budget;
+import com.craftinginterpreters.lox.CompiledScript;
+import com.craftinginterpreters.lox.LoxContext;
+import com.craftinginterpreters.lox.LoxEngine;
+
+// Runs scripts several times in one JVM and reports the best CPU time of each, once the JIT has warmed up
+public class Benchmark {
+    private static final int DEFAULT_RUNS = 10;
+
+    // Every limit is checked, but none is ever reached
+    private static final Budget GENEROUS = Budget.unlimited()
+        .withStatements(Long.MAX_VALUE / 2)
+        .withTimeout(Duration.ofHours(1))
+        .withCallDepth(100_000)
+        .withAllocatedBytes(Long.MAX_VALUE / 2);
+
+    public static void main(String[] args) throws IOException {
+        int first = 0;
+        int runs = DEFAULT_RUNS;
+        boolean budgeted = false;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--runs") && first + 1 < args.length) {
+                runs = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("--budgeted")) {
+                budgeted = true;
+                first++;
+            } else {
+                break;
+            }
+        }
+        if (first == args.length || args[first].startsWith("--")) {
+            System.err.println("Usage: benchmark [--runs n] [--budgeted] script...");
+            System.exit(64);
+        }
+
+        LoxEngine engine = new LoxEngine();
+        for (int i = first; i < args.length; i++) {
+            String source = new String(Files.readAllBytes(Paths.get(args[i])), Charset.defaultCharset());
+            CompiledScript script = engine.compile(source);
+            if (!script.isValid()) {
+                System.err.println(args[i] + ": " + script.diagnostics());
+                System.exit(65);
+            }
+
+            if (!budgeted) {
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < runs; run++) {
+                    best = Math.min(best, time(engine, script, engine.newContext()));
+                }
+                System.out.printf("%-40s %10.1f ms%n", args[i], best / 1e6);
+                continue;
+            }
+
+            // Alternated, so that both see the same JIT and machine state, and
+            // taking turns to go first, so that neither always runs in the garbage of the other
+            long plain = Long.MAX_VALUE;
+            long limited = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                if (run % 2 == 0) {
+                    plain = Math.min(plain, time(engine, script, engine.newContext()));
+                    limited = Math.min(limited, time(engine, script, engine.newContext(GENEROUS)));
+                } else {
+                    limited = Math.min(limited, time(engine, script, engine.newContext(GENEROUS)));
+                    plain = Math.min(plain, time(engine, script, engine.newContext()));
+                }
+            }
+            System.out.printf("%-40s %10.1f ms %10.1f ms budgeted %+6.1f%%%n",
+                args[i], plain / 1e6, limited / 1e6, 100.0 * (limited - plain) / plain);
+        }
+    }
+
+    // Each run gets fresh globals, and its output is thrown away
+    private static long time(LoxEngine engine, CompiledScript script, LoxContext context) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        context.setOutput(Writer.nullWriter());
+
+        long start = threads.getCurrentThreadCpuTime();
+        engine.eval(script, context);
+        return threads.getCurrentThreadCpuTime() - start;
+    }
+}
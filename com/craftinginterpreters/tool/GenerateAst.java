@@ -16,32 +16,59 @@ public class GenerateAst {
 
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
+            // Fields after "|" are not set by the parser but filled in by the resolver;
+            // slot is only set for globals, see GlobalEnvironment
+            "Assign   : Token name, Expr value | int depth = -1, int slot = -1",
             "Binary   : Expr left, Token operator, Expr right",
-            "Call     : Expr callee, Token paren, List<Expr> arguments",
-            "Get      : Expr object, Token name",
+            // checked is a cache written while the call runs, see Interpreter.callable()
+            "Call     : Expr callee, Token paren, List<Expr> arguments | Object checked = null",
+            // member caches the Java method last looked up here, see HostObject.method()
+            "Get      : Expr object, Token name | Object member = null",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Logical  : Expr left, Token operator, Expr right",
             "Set      : Expr object, Token name, Expr value",
-            "Super    : Token keyword, Token method",
-            "This     : Token keyword",
+            "Super    : Token keyword, Token method | int depth = -1",
+            "This     : Token keyword | int depth = -1",
             "Unary    : Token operator, Expr right",
-            "Variable : Token name"
+            "Variable : Token name | int depth = -1, int slot = -1",
+            // Superinstructions, only created by the Optimizer out of resolved trees
+            "CompareConstant  : Expr.Variable left, Token operator, double right",
+            "CompareVariables : Expr.Variable left, Token operator, Expr.Variable right",
+            "Increment        : Expr.Variable variable, Token operator, double delta",
+            "IsNil            : Expr operand, boolean negated",
+            "UpdateField      : Expr.Get field, Token name, Token operator, Expr value",
+            // Method calls; the fields after "|" are filled in by the Optimizer and the
+            // interpreter, see Interpreter.visitInvokeExpr()
+            "Invoke           : Expr.Get method, Expr.Call call" +
+                              " | Object dispatch = null, Stmt.Function target = null, boolean fieldless = false," +
+                              " Expr body = null",
+            "SuperInvoke      : Expr.Super method, Expr.Call call | Object dispatch = null",
+            // Calls with the body of the function they expect copied in, which reads the
+            // arguments as Arguments; see Inliner and Interpreter.visitInlineExpr()
+            "Inline           : Expr.Call call, Stmt.Function function, Expr body | boolean deoptimized = false",
+            "Argument         : Token name, int index",
+            // Arithmetic and comparisons of operands TypeInference proved to be numbers,
+            // which skip the checks and pass nested results unboxed
+            "NumberBinary     : Expr left, Token operator, Expr right"
         ));
         defineAst(outputDir, "Stmt", Arrays.asList(
+            // "yields" marks the statements that contain a yield, which generators can't run in one go;
+            // "variables" counts the parameters and variables of a call's environment, and
+            // "fields" the fields an initializer assigns on this, see LoxInstance
             "Function   : Token name, List<Token> params," +
-                        " List<Stmt> body",
+                        " List<Stmt> body | boolean generator = false, int variables = 0, int fields = 0",
             "If         : Expr condition, Stmt thenBranch," +
-                        " Stmt elseBranch",
-            "Block      : List<Stmt> statements",
+                        " Stmt elseBranch | boolean yields = false",
+            "Block      : List<Stmt> statements | boolean yields = false",
             "Class      : Token name, Expr.Variable superclass," + 
                         " List<Stmt.Function> methods",
             "Expression : Expr expression",
             "Print      : Expr expression",
             "Return     : Token keyword, Expr value", // Keywork is kept for error reporting
             "Var        : Token name, Expr initializer",
-            "While      : Expr condition, Stmt body"
+            "While      : Token keyword, Expr condition, Stmt body | boolean yields = false", // Keyword is kept for error reporting
+            "Yield      : Token keyword, Expr value"
         ));
     }
 
@@ -69,7 +96,12 @@ public class GenerateAst {
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String resolvedFields = null;
+            if (fields.contains("|")) {
+                resolvedFields = fields.split("\\|")[1].trim();
+                fields = fields.split("\\|")[0].trim();
+            }
+            defineType(writer, baseName, className, fields, resolvedFields);
         }
 
         // accept()
@@ -94,7 +126,7 @@ public class GenerateAst {
         writer.println();
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList, String resolvedFieldList) {
         writer.println("\tstatic class " + className + " extends " + baseName + " {");
 
         // Constructor
@@ -122,6 +154,13 @@ public class GenerateAst {
             writer.println("\t\tfinal " + field + ";");
         }
 
+        // Resolver output, written once before the tree is shared with interpreters, and runtime caches
+        if (resolvedFieldList != null) {
+            for (String field : resolvedFieldList.split(", ")) {
+                writer.println("\t\t" + field + ";");
+            }
+        }
+
         writer.println("\t}\n");
     }
 }
@@ -0,0 +1,119 @@
+package com.craftinginterpreters.tool;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import com.craftinginterpreters.lox.Lox;
+
+// Feeds millions of lines to the REPL and checks that its heap stays flat
+public class ReplSoak {
+    // Each line defines or runs something new, so that every one of them is scanned, parsed and resolved
+    private static final String[] SNIPPETS = {
+        "var a = %d; a = a + %d;",
+        "fun f(n) { var m = n + %d; return m * 2; } var r = f(%d);",
+        "{ var x = %d; var y = x; { var z = y + %d; x = z; } }",
+        "class C { init(v) { this.v = v + %d; } get() { return this.v; } } var c = C(%d).get();",
+        "var i = 0; while (i < 3) { i = i + 1; var k = i + %d; } var s = \"%d\";"
+    };
+    private static final long SAMPLE_EVERY = 1_000_000;
+    private static final double TOLERANCE = 1.25; // how much the heap may grow past its first sample
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: repl_soak [evaluations]");
+            System.exit(64);
+        }
+        long evaluations = args.length == 1 ? Long.parseLong(args[0]) : 10_000_000;
+
+        Lines lines = new Lines(evaluations);
+        PrintStream out = System.out;
+        System.setIn(lines);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Lox.main(new String[0]);
+        } finally {
+            System.setOut(out);
+        }
+
+        long first = lines.samples[0];
+        long last = lines.samples[lines.sampled - 1];
+        System.out.printf("%d evaluations, heap after the first %d: %d KB, at the end: %d KB%n",
+            lines.count, Math.min(SAMPLE_EVERY, evaluations), first / 1024, last / 1024);
+        if (last > first * TOLERANCE) {
+            System.out.println("The heap grew.");
+            System.exit(1);
+        }
+    }
+
+    // Collects garbage and returns the heap left in use
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The REPL's input, generated a line at a time as the REPL reads it.
+     * The REPL only asks for a line once it has run the one before, so the
+     * heap is sampled between two evaluations, when only what they left
+     * behind is still reachable.
+     */
+    private static class Lines extends InputStream {
+        private final long total;
+        private long count = 0;
+        private byte[] line = new byte[0];
+        private int position = 0;
+        final long[] samples = new long[64];
+        int sampled = 0;
+        private boolean finished = false;
+
+        Lines(long total) {
+            this.total = total;
+        }
+
+        @Override
+        public int read() {
+            if (position == line.length && !nextLine()) return -1;
+            return line[position++];
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) return 0;
+            if (position == line.length && !nextLine()) return -1;
+
+            // Never more than one line at a time, so the sample isn't taken with lines still buffered
+            int n = Math.min(length, line.length - position);
+            System.arraycopy(line, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextLine() {
+            if (count == total) {
+                if (!finished) sample();
+                finished = true;
+                return false;
+            }
+            if (count > 0 && count % SAMPLE_EVERY == 0) sample();
+
+            String snippet = SNIPPETS[(int)(count % SNIPPETS.length)];
+            line = (String.format(snippet, count, count) + "\n").getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            count++;
+            return true;
+        }
+
+        private void sample() {
+            long used = usedHeap();
+            if (sampled < samples.length) {
+                samples[sampled++] = used;
+            } else {
+                samples[samples.length - 1] = used;
+            }
+            System.err.printf("%,d evaluations: %d KB%n", count, used / 1024);
+        }
+    }
+}